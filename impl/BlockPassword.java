@@ -2,16 +2,17 @@ package encryption.impl;
 
 import encryption.Encryptible;
 import encryption.impl.blockUtils.StringSplit;
+import encryption.utils.DispatchPolicy;
 import encryption.utils.TaskUtil;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 要注意非对称加密的明文与密文分块大小是不一样的！！！
- * 防止出现这种BUG，长度问题重点关注blockBitSize和getValidLengthOfChars
+ * 防止出现这种BUG，长度问题重点关注getMessageLengthOfChars和getValidLengthOfChars
  *
  * @param <T>
  */
@@ -24,14 +25,21 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
     protected static final int MESSAGE_BIT_SIZE = Character.SIZE;
 
     /**
-     * 明文分块大小
+     * 明文分组的首字符，非零使分组数值的位数固定，解密时据此校验并去掉
      */
-    private final int blockBitSize;
+    private static final char BLOCK_MARKER = 0x0001;
 
-    protected BlockPassword(int blockBitSize) {
+    /**
+     * 明文分组按模的位数紧密填充：
+     * 每组 = 分组标记 + getMessageLengthOfChars()个明文字符，数值小于2^(模的位数 - 1)，一定小于模；
+     * 密文分组按模的位数定长（getValidLengthOfChars()个字符），高位补0
+     * CBC的链接值只取前一密文分组的低getMessageLengthOfChars()个字符，异或后分组标记不变、数值仍小于模
+     *
+     * @param ivBitSize CBC初始向量的比特数，不超过明文分组的比特数
+     */
+    protected BlockPassword(int ivBitSize) {
         this.randomOffset = MESSAGE_BIT_SIZE * (random.nextInt(5) + 5);
-        this.blockBitSize = blockBitSize;
-        this.randomObj = this.convertString(this.format("" + this.hashCode(), blockBitSize / MESSAGE_BIT_SIZE));
+        this.randomObj = this.convertString(this.format("" + this.hashCode(), ivBitSize / MESSAGE_BIT_SIZE));
     }
 
     protected abstract int getBitLength();
@@ -48,6 +56,12 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
 
     private final int randomOffset;
 
+    /**
+     * 加密、解密各自的自适应调度策略，首次使用时校准
+     */
+    private volatile DispatchPolicy encryptPolicy;
+    private volatile DispatchPolicy decryptPolicy;
+
     /**
      * ECB加密
      *
@@ -58,16 +72,16 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
     protected StringBuffer encrypt_ECB(StringBuffer msgText, T publicKey) {
         this.checkValid(msgText);
         this.checkEncryptValid(msgText);
-        //分割明文消息串，分成每组（块）64bit(即4个字符)
-        StringSplit stringSplit = new StringSplit(msgText, this.blockBitSize / Character.SIZE, true);
+        //分割明文消息串，每组按模的位数紧密填充
+        StringSplit stringSplit = new StringSplit(msgText, this.getMessageLengthOfChars(), true);
         //结果容器
         final StringBuffer res = new StringBuffer();
         //连接密文序列
         String msg = stringSplit.next();
         while (msg != null) {
-            T obj = this.convertString(msg);
+            T obj = this.frame(msg);
             T encrypt = this.encrypt(obj, publicKey);
-            res.append(this.addLeadingEmptyPadding(this.recoverString(encrypt), this.getValidLengthOfChars())); //编码已超过100位，直接存储
+            res.append(this.recoverString(encrypt, this.getValidLengthOfChars())); //编码已超过100位，直接存储
             msg = stringSplit.next();
         }
         //返回密文序列缓冲区
@@ -97,7 +111,7 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         while (pwd != null) {
             T obj = this.convertString(pwd);
             T decrypt = this.decrypt(obj, publicKey);
-            res.append(this.recoverString(decrypt));
+            res.append(this.unframe(decrypt));
             pwd = split.next();
         }
         this.filterTailPadding(res, StringSplit.PADDING);
@@ -105,14 +119,18 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
     }
 
     /**
-     * assert text.length() <= length
+     * 密文分组写成定长length个字符，数值不足时高位补0字符
+     * 子类可直接按定长输出，省去先转换再补齐的拼接
      *
-     * @param text
-     * @param blockLength
+     * @param obj
+     * @param length
      * @return
      */
-    private String addLeadingEmptyPadding(String text, final int blockLength) {
-        final int length = blockLength;
+    protected String recoverString(T obj, int length) {
+        String text = this.recoverString(obj);
+        if (text.length() > length) {
+            throw new IllegalArgumentException("密文分组超过定长");
+        }
         if (text.length() < length) {
             final int leftSize = length - text.length();
             final char[] tmpChar = new char[leftSize];
@@ -121,6 +139,41 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         return text;
     }
 
+    /**
+     * 明文分组加上分组标记
+     *
+     * @param msg
+     * @return
+     */
+    private T frame(String msg) {
+        return this.convertString(BLOCK_MARKER + msg);
+    }
+
+    /**
+     * 校验并去掉分组标记
+     *
+     * @param obj
+     * @return
+     */
+    private String unframe(T obj) {
+        final String text = this.recoverString(obj);
+        if (text.length() != this.getMessageLengthOfChars() + 1 || text.charAt(0) != BLOCK_MARKER) {
+            throw new IllegalArgumentException("分组标记错误，密文或密钥不对");
+        }
+        return text.substring(1);
+    }
+
+    /**
+     * CBC的链接值：前一密文分组（或初始向量）的低getMessageLengthOfChars()个字符
+     *
+     * @param block
+     * @return
+     */
+    private T chainOf(String block) {
+        final int length = this.getMessageLengthOfChars();
+        return this.convertString(block.length() > length ? block.substring(block.length() - length) : block);
+    }
+
     /**
      * CBC加密
      *
@@ -131,22 +184,20 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
     protected StringBuffer encrypt_CBC(StringBuffer msgText, T publicKey) {
         this.checkValid(msgText);
         this.checkEncryptValid(msgText);
-        //分割明文消息串，单位长度64bit
-        StringSplit stringSplit = new StringSplit(msgText, this.blockBitSize / Character.SIZE, true);
+        //分割明文消息串，每组按模的位数紧密填充
+        StringSplit stringSplit = new StringSplit(msgText, this.getMessageLengthOfChars(), true);
 
         final StringBuffer res = new StringBuffer();
         String msg = stringSplit.next();
         T lastResObj = this.randomObj;
         while (msg != null) {
-            T msgObj = this.convertString(msg);
+            T msgObj = this.frame(msg);
             msgObj = (T) msgObj.xor(lastResObj);
             T encrypt = this.encrypt(msgObj, publicKey);
-            res.append(this.addLeadingEmptyPadding(
-                    this.recoverString(encrypt),
-                    this.getValidLengthOfChars())
-            );
+            final String block = this.recoverString(encrypt, this.getValidLengthOfChars());
+            res.append(block);
             msg = stringSplit.next();
-            lastResObj = encrypt;
+            lastResObj = this.chainOf(block);
         }
         return res;
     }
@@ -173,9 +224,9 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
             T pwdObj = this.convertString(pwd);
             T decrypt = this.decrypt(pwdObj, privateKey);
             decrypt = (T) decrypt.xor(lastResObj);
-            res.append(this.recoverString(decrypt));
+            res.append(this.unframe(decrypt));
+            lastResObj = this.chainOf(pwd);
             pwd = split.next();
-            lastResObj = pwdObj;
         }
         this.filterTailPadding(res, StringSplit.PADDING);
         return res;
@@ -192,42 +243,41 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
      * 非对称加密的多线程任务列表并无分割
      * 是因为该加密一般使用于短明文，并无该必要
      */
-    @SuppressWarnings("Duplicates")
     public StringBuffer encrypt_ECB_with_multiply_threads(StringBuffer msgText, final T publicKey) {
+        return this.encrypt_ECB_with_multiply_threads(msgText, publicKey, 1, TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 限时版本，超时或任一分组失败时立即取消剩余任务并抛出TaskFailedException
+     */
+    public StringBuffer encrypt_ECB_with_multiply_threads(StringBuffer msgText, final T publicKey, long timeOut, TimeUnit unit) {
+        return this.encrypt_ECB_with_multiply_threads(msgText, publicKey, 1, TaskUtil.deadlineOf(timeOut, unit));
+    }
+
+    @SuppressWarnings("Duplicates")
+    private StringBuffer encrypt_ECB_with_multiply_threads(StringBuffer msgText, final T publicKey, int blocksPerTask, long deadline) {
         //检查参数合法性
         this.checkValid(msgText);
         this.checkEncryptValid(msgText);
+        //空消息没有分组，与encrypt_ECB一致
+        if (msgText.length() == 0) {
+            return new StringBuffer();
+        }
         //预处理添加填充字符使其刚好完全分组
-        final int taskLength = this.blockBitSize / Character.SIZE;
+        final int taskLength = this.getMessageLengthOfChars();
         this.preDealPadding(msgText, taskLength, StringSplit.PADDING);
-        //分割明文消息串，分成每组（块）blockbitSize(即至少1024)
+        //分割明文消息串，每组按模的位数紧密填充
         final String target = msgText.toString();
         final int length = target.length();
         final int groupCount = this.getGroupCount(length, taskLength);
-        String substring;
-        //构造回调任务列表
-        List<Callable<Boolean>> callableList = new ArrayList<>();
-        final String[] strings = new String[groupCount];
-        int sp = 0, ep = 0;
         final int cipherBlockLength = this.getValidLengthOfChars();
-        for (int i = 0; i < groupCount; i++) {
-            ep += taskLength;
-            if (ep > length) {
-                ep = length;
-            }
-            substring = target.substring(sp, ep);
-            String s = substring;
-            int idx = i;
-            callableList.add(() -> {
-                final T t = this.convertString(s);
-                final T encryptEcb = this.encrypt(t, publicKey);
-                strings[idx] = this.addLeadingEmptyPadding(this.recoverString(encryptEcb), cipherBlockLength);
-                return true;
-            });
-            sp = ep;
-        }
         //并发执行
-        TaskUtil.initAndInvokeAll(callableList);
+        final String[] strings = TaskUtil.invokeBlocks(groupCount, blocksPerTask, deadline, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            final T t = this.frame(s);
+            final T encryptEcb = this.encrypt(t, publicKey);
+            return this.recoverString(encryptEcb, cipherBlockLength);
+        });
         //结果容器
         final StringBuffer res = new StringBuffer();
         //连接密文序列
@@ -239,11 +289,25 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
 
     }
 
-    @SuppressWarnings("Duplicates")
     public StringBuffer decrypt_ECB_with_multiply_threads(StringBuffer pwdText, final T privateKey) {
+        return this.decrypt_ECB_with_multiply_threads(pwdText, privateKey, 1, TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 限时版本，超时或任一分组失败时立即取消剩余任务并抛出TaskFailedException
+     */
+    public StringBuffer decrypt_ECB_with_multiply_threads(StringBuffer pwdText, final T privateKey, long timeOut, TimeUnit unit) {
+        return this.decrypt_ECB_with_multiply_threads(pwdText, privateKey, 1, TaskUtil.deadlineOf(timeOut, unit));
+    }
+
+    @SuppressWarnings("Duplicates")
+    private StringBuffer decrypt_ECB_with_multiply_threads(StringBuffer pwdText, final T privateKey, int blocksPerTask, long deadline) {
         //检查参数合法性
         this.checkValid(pwdText);
         this.checkDecryptValid(pwdText);
+        if (pwdText.length() == 0) {
+            return new StringBuffer();
+        }
         final int taskLength = this.getValidLengthOfChars();
         if (!this.preCheck(pwdText, taskLength)) {
             throw new IllegalArgumentException("参数不合法");
@@ -253,28 +317,12 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         final int length = target.length();
         //分组：groupCount * taskLength = floor(totalLength)
         final int groupCount = this.getGroupCount(length, taskLength);
-        //根据分组划分字符串构造回调任务列表
-        List<Callable<Boolean>> callableList = new ArrayList<>();
-        String substring;
-        int sp = 0, ep = 0;
-        final String[] strings = new String[groupCount];
-        for (int i = 0; i < groupCount; i++) {
-            ep += taskLength;
-            if (ep > length) {
-                ep = length;
-            }
-            substring = target.substring(sp, ep);
-            String s = substring;
-            int idx = i;
-            callableList.add(() -> {
-                T decrypt = this.decrypt(this.convertString(s), privateKey);
-                strings[idx] = this.recoverString(decrypt);
-                return true;
-            });
-            sp = ep;
-        }
         //启用多线程调用任务并发执行
-        TaskUtil.initAndInvokeAll(callableList);
+        final String[] strings = TaskUtil.invokeBlocks(groupCount, blocksPerTask, deadline, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            T decrypt = this.decrypt(this.convertString(s), privateKey);
+            return this.unframe(decrypt);
+        });
         final StringBuffer res = new StringBuffer();
         //把strings拼接到缓冲区中返回
         for (int i = 0; i < groupCount; i++) {
@@ -291,11 +339,25 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
      * @param pwdText
      * @return
      */
-    @SuppressWarnings("Duplicates")
     public StringBuffer decrypt_CBC_multiply_threads(StringBuffer pwdText, final T privateKey) {
+        return this.decrypt_CBC_multiply_threads(pwdText, privateKey, 1, TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 限时版本，超时或任一分组失败时立即取消剩余任务并抛出TaskFailedException
+     */
+    public StringBuffer decrypt_CBC_multiply_threads(StringBuffer pwdText, final T privateKey, long timeOut, TimeUnit unit) {
+        return this.decrypt_CBC_multiply_threads(pwdText, privateKey, 1, TaskUtil.deadlineOf(timeOut, unit));
+    }
+
+    @SuppressWarnings("Duplicates")
+    private StringBuffer decrypt_CBC_multiply_threads(StringBuffer pwdText, final T privateKey, int blocksPerTask, long deadline) {
         //检查参数合法性
         this.checkValid(pwdText);
         this.checkDecryptValid(pwdText);
+        if (pwdText.length() == 0) {
+            return new StringBuffer();
+        }
         final int taskLength = this.getValidLengthOfChars();
         if (!this.preCheck(pwdText, taskLength)) {
             throw new IllegalArgumentException("参数不合法");
@@ -305,32 +367,16 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         //对缓冲区字符串分组成groupCount , 每组大小为taskLength
         final int length = target.length();
         final int groupCount = this.getGroupCount(length, taskLength);
-        List<Callable<Boolean>> callableList = new ArrayList<>();
-        //遍历分组构造回调任务列表
-        int sp = 0, ep = 0;
-        String substring;
-        final String[] strings = new String[groupCount];
-        String lastString = this.recoverString(this.randomObj);
-        for (int i = 0; i < groupCount; i++) {
-            ep += taskLength;
-            if (ep > length) {
-                ep = length;
-            }
-            substring = target.substring(sp, ep);
-            String lastDealString = lastString;
-            String s = substring;
-            int idx = i;
-            callableList.add(() -> {
-                T decrypt = this.decrypt(this.convertString(s), privateKey);
-                decrypt = (T) decrypt.xor(this.convertString(lastDealString));
-                strings[idx] = this.recoverString(decrypt);
-                return true;
-            });
-            lastString = substring;
-            sp = ep;
-        }
-        //调用所有任务并发执行，写入主线程的final向量变量strings
-        TaskUtil.initAndInvokeAll(callableList);
+        final String first = this.recoverString(this.randomObj);
+        //调用所有任务并发执行，每个分组只依赖前一分组的密文
+        final String[] strings = TaskUtil.invokeBlocks(groupCount, blocksPerTask, deadline, idx -> {
+            final int sp = idx * taskLength;
+            final String s = target.substring(sp, Math.min(sp + taskLength, length));
+            final String lastDealString = idx == 0 ? first : target.substring(sp - taskLength, sp);
+            T decrypt = this.decrypt(this.convertString(s), privateKey);
+            decrypt = (T) decrypt.xor(this.chainOf(lastDealString));
+            return this.unframe(decrypt);
+        });
         StringBuffer res = new StringBuffer();
         //将strings中的字符串元素拼接到res字符串缓冲区中返回
         for (int i = 0; i < groupCount; i++) {
@@ -340,6 +386,193 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         return res;
     }
 
+    /**
+     * 自适应版本
+     * 加密（公钥）与解密（私钥）的单块开销相差悬殊，故分别校准调度策略
+     */
+    public StringBuffer encrypt_ECB_adaptive(StringBuffer msgText, final T publicKey) {
+        this.checkValid(msgText);
+        final int blockCount = this.getGroupCount(msgText.length(), this.getMessageLengthOfChars());
+        final DispatchPolicy policy = this.calibrateEncrypt(publicKey);
+        if (!policy.isParallel(blockCount)) {
+            return this.encrypt_ECB(msgText, publicKey);
+        }
+        return this.encrypt_ECB_with_multiply_threads(msgText, publicKey, policy.getBlocksPerTask(blockCount), TaskUtil.NO_DEADLINE);
+    }
+
+    public StringBuffer decrypt_ECB_adaptive(StringBuffer pwdText, final T privateKey) {
+        this.checkValid(pwdText);
+        final int blockCount = this.getGroupCount(pwdText.length(), this.getValidLengthOfChars());
+        final DispatchPolicy policy = this.calibrateDecrypt(privateKey);
+        if (!policy.isParallel(blockCount)) {
+            return this.decrypt_ECB(pwdText, privateKey);
+        }
+        return this.decrypt_ECB_with_multiply_threads(pwdText, privateKey, policy.getBlocksPerTask(blockCount), TaskUtil.NO_DEADLINE);
+    }
+
+    public StringBuffer decrypt_CBC_adaptive(StringBuffer pwdText, final T privateKey) {
+        this.checkValid(pwdText);
+        final int blockCount = this.getGroupCount(pwdText.length(), this.getValidLengthOfChars());
+        final DispatchPolicy policy = this.calibrateDecrypt(privateKey);
+        if (!policy.isParallel(blockCount)) {
+            return this.decrypt_CBC(pwdText, privateKey);
+        }
+        return this.decrypt_CBC_multiply_threads(pwdText, privateKey, policy.getBlocksPerTask(blockCount), TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 异步版本
+     * 返回的CompletableFuture在调用方提供的执行器上完成，
+     * ECB与CBC解密按调度策略把分组拆成多个任务提交，CBC加密整体一个任务
+     */
+    @SuppressWarnings("Duplicates")
+    public CompletableFuture<StringBuffer> encryptAsync_ECB(StringBuffer msgText, final T publicKey, Executor executor) {
+        this.checkValid(msgText);
+        this.checkEncryptValid(msgText);
+        //空消息没有分组，与encrypt_ECB一致
+        if (msgText.length() == 0) {
+            return CompletableFuture.completedFuture(new StringBuffer());
+        }
+        final int taskLength = this.getMessageLengthOfChars();
+        this.preDealPadding(msgText, taskLength, StringSplit.PADDING);
+        final String target = msgText.toString();
+        final int length = target.length();
+        final int groupCount = this.getGroupCount(length, taskLength);
+        final int cipherBlockLength = this.getValidLengthOfChars();
+        return TaskUtil.invokeBlocksAsync(groupCount,
+                count -> this.getAsyncBlocksPerTask(this.calibrateEncrypt(publicKey), count), executor, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            final T encryptEcb = this.encrypt(this.frame(s), publicKey);
+            return this.recoverString(encryptEcb, cipherBlockLength);
+        }, strings -> {
+            final StringBuffer res = new StringBuffer();
+            for (String string : strings) {
+                res.append(string);
+            }
+            return res;
+        });
+    }
+
+    @SuppressWarnings("Duplicates")
+    public CompletableFuture<StringBuffer> decryptAsync_ECB(StringBuffer pwdText, final T privateKey, Executor executor) {
+        this.checkValid(pwdText);
+        this.checkDecryptValid(pwdText);
+        if (pwdText.length() == 0) {
+            return CompletableFuture.completedFuture(new StringBuffer());
+        }
+        final int taskLength = this.getValidLengthOfChars();
+        if (!this.preCheck(pwdText, taskLength)) {
+            throw new IllegalArgumentException("参数不合法");
+        }
+        final String target = pwdText.toString();
+        final int length = target.length();
+        final int groupCount = this.getGroupCount(length, taskLength);
+        return TaskUtil.invokeBlocksAsync(groupCount,
+                count -> this.getAsyncBlocksPerTask(this.calibrateDecrypt(privateKey), count), executor, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            return this.unframe(this.decrypt(this.convertString(s), privateKey));
+        }, strings -> {
+            final StringBuffer res = new StringBuffer();
+            for (String string : strings) {
+                res.append(string);
+            }
+            this.filterTailPadding(res, StringSplit.PADDING);
+            return res;
+        });
+    }
+
+    public CompletableFuture<StringBuffer> encryptAsync_CBC(StringBuffer msgText, final T publicKey, Executor executor) {
+        this.checkValid(msgText);
+        this.checkEncryptValid(msgText);
+        return CompletableFuture.supplyAsync(() -> this.encrypt_CBC(msgText, publicKey), executor);
+    }
+
+    @SuppressWarnings("Duplicates")
+    public CompletableFuture<StringBuffer> decryptAsync_CBC(StringBuffer pwdText, final T privateKey, Executor executor) {
+        this.checkValid(pwdText);
+        this.checkDecryptValid(pwdText);
+        if (pwdText.length() == 0) {
+            return CompletableFuture.completedFuture(new StringBuffer());
+        }
+        final int taskLength = this.getValidLengthOfChars();
+        if (!this.preCheck(pwdText, taskLength)) {
+            throw new IllegalArgumentException("参数不合法");
+        }
+        final String target = pwdText.toString();
+        final int length = target.length();
+        final int groupCount = this.getGroupCount(length, taskLength);
+        final String first = this.recoverString(this.randomObj);
+        return TaskUtil.invokeBlocksAsync(groupCount,
+                count -> this.getAsyncBlocksPerTask(this.calibrateDecrypt(privateKey), count), executor, idx -> {
+            final int sp = idx * taskLength;
+            final String s = target.substring(sp, Math.min(sp + taskLength, length));
+            final String lastDealString = idx == 0 ? first : target.substring(sp - taskLength, sp);
+            T decrypt = this.decrypt(this.convertString(s), privateKey);
+            decrypt = (T) decrypt.xor(this.chainOf(lastDealString));
+            return this.unframe(decrypt);
+        }, strings -> {
+            final StringBuffer res = new StringBuffer();
+            for (String string : strings) {
+                res.append(string);
+            }
+            this.filterTailPadding(res, StringSplit.PADDING);
+            return res;
+        });
+    }
+
+    private int getAsyncBlocksPerTask(DispatchPolicy policy, int groupCount) {
+        if (!policy.isParallel(groupCount)) {
+            return Math.max(1, groupCount);
+        }
+        return policy.getBlocksPerTask(groupCount);
+    }
+
+    /**
+     * 以公钥加密样本块校准加密的调度策略
+     *
+     * @param publicKey
+     * @return
+     */
+    public DispatchPolicy calibrateEncrypt(final T publicKey) {
+        DispatchPolicy policy = this.encryptPolicy;
+        if (policy == null) {
+            synchronized (this) {
+                policy = this.encryptPolicy;
+                if (policy == null) {
+                    final T sample = this.getSampleBlock();
+                    policy = DispatchPolicy.calibrate(() -> this.encrypt(sample, publicKey));
+                    this.encryptPolicy = policy;
+                }
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * 以私钥解密样本块校准解密的调度策略
+     *
+     * @param privateKey
+     * @return
+     */
+    public DispatchPolicy calibrateDecrypt(final T privateKey) {
+        DispatchPolicy policy = this.decryptPolicy;
+        if (policy == null) {
+            synchronized (this) {
+                policy = this.decryptPolicy;
+                if (policy == null) {
+                    final T sample = this.getSampleBlock();
+                    policy = DispatchPolicy.calibrate(() -> this.decrypt(sample, privateKey));
+                    this.decryptPolicy = policy;
+                }
+            }
+        }
+        return policy;
+    }
+
+    private T getSampleBlock() {
+        return this.frame(this.format("calibrate", this.getMessageLengthOfChars()));
+    }
+
 
     private void checkValid(StringBuffer stringBuffer) {
         if (stringBuffer == null) {
@@ -348,7 +581,7 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
     }
 
     private void checkEncryptValid(StringBuffer stringBuffer) {
-        if (stringBuffer.length() > MAX_AVAILABLE_TIMES * this.blockBitSize / MESSAGE_BIT_SIZE) {
+        if (stringBuffer.length() > MAX_AVAILABLE_TIMES * this.getMessageLengthOfChars()) {
             throw new IllegalArgumentException("缓冲区长度超过限制长度");
         }
     }
@@ -364,6 +597,15 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         return (stringBuffer.length() % unitLength == 0);
     }
 
+    /**
+     * 明文分组的字符数：模的位数减一后可容纳的字符数，再除去分组标记
+     *
+     * @return
+     */
+    public int getMessageLengthOfChars() {
+        return (this.getBitLength() - 1) / MESSAGE_BIT_SIZE - 1;
+    }
+
     private int getValidLengthOfChars() {
         return this.getGroupCount(this.getBitLength(), Character.SIZE);
     }
@@ -385,7 +627,4 @@ public abstract class BlockPassword<T extends Encryptible> extends AsymKeyEncryp
         stringBuffer.append(chars);
     }
 
-    protected void finalize() {
-        TaskUtil.recycleExecutor();
-    }
 }
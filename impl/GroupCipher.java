@@ -0,0 +1,351 @@
+package encryption.impl;
+
+import encryption.impl.blockUtils.StringSplit;
+import encryption.impl.streamUtils.StreamRegister;
+import encryption.impl.streamUtils.Streamable;
+
+/**
+ * 分组密码的增量加解密器
+ * 明文/密文可分多次经update输入，最后调用doFinal结束，
+ * 输出与GroupPassword对应模式一次性加解密的结果一致
+ * 只保留不足一个分组的待处理字符与一个分组的链接状态（CBC的上一分组、CFB/OFB的寄存器、CTR的计数器），
+ * 解密块模式时需暂扣最后一个完整分组，直到doFinal才能确定并去掉其中的填充字符
+ * 初始化向量默认取GroupPassword实例的初始化向量，它由实例身份派生，其它实例无法复现，
+ * 密文需要在别处解密时应以init设置随机的初始化向量并随密文保存（见CipherCodec）
+ * doFinal后状态复位（初始化向量不变），可继续处理下一条消息
+ * 非线程安全
+ *
+ * @param <T>
+ */
+public class GroupCipher<T extends Streamable> {
+
+    private final GroupPassword<T> groupPassword;
+    private final GroupMode mode;
+    private final boolean encrypt;
+    private final int groupLength;
+
+    /**
+     * 初始化向量及其字节形式（CTR计数器分组由它派生）
+     */
+    private T initVector;
+    private byte[] iv;
+
+    /**
+     * 不足一个分组（解密时为暂扣的分组）的待处理字符
+     */
+    private final StringBuilder pending = new StringBuilder();
+
+    /**
+     * CBC链接状态
+     */
+    private T last;
+
+    /**
+     * CFB/OFB寄存器
+     */
+    private StreamRegister<T> streamRegister;
+
+    /**
+     * CTR计数器与当前计数器分组的密文，keyStreamPos为下一个可用字节
+     */
+    private long counter;
+    private byte[] keyStream;
+    private int keyStreamPos;
+
+    GroupCipher(GroupPassword<T> groupPassword, GroupMode mode, boolean encrypt) {
+        if (groupPassword == null) {
+            throw new NullPointerException("groupPassword is null");
+        }
+        if (mode == null) {
+            throw new NullPointerException("mode is null");
+        }
+        this.groupPassword = groupPassword;
+        this.mode = mode;
+        this.encrypt = encrypt;
+        this.groupLength = groupPassword.getGroupLength();
+        this.initVector = groupPassword.getInitVector();
+        this.iv = groupPassword.getInitVectorBytes();
+        this.reset();
+    }
+
+    /**
+     * 设置初始化向量并复位状态
+     *
+     * @param iv 长度须为getBlockBytes()
+     */
+    public void init(byte[] iv) {
+        if (iv == null) {
+            throw new NullPointerException("iv is null");
+        }
+        if (iv.length != this.getBlockBytes()) {
+            throw new IllegalArgumentException("初始化向量长度应为" + this.getBlockBytes());
+        }
+        this.iv = iv.clone();
+        this.initVector = this.groupPassword.convertString(this.groupPassword.bytesToString(this.iv));
+        this.reset();
+    }
+
+    /**
+     * 当前的初始化向量
+     *
+     * @return
+     */
+    public byte[] getInitVector() {
+        return this.iv.clone();
+    }
+
+    /**
+     * 分组（即初始化向量）的字节数
+     *
+     * @return
+     */
+    public int getBlockBytes() {
+        return this.groupPassword.getBlockBytes();
+    }
+
+    public GroupMode getMode() {
+        return this.mode;
+    }
+
+    public boolean isEncrypt() {
+        return this.encrypt;
+    }
+
+    /**
+     * 输入一段文本，返回本次可以确定的输出（可能为空串）
+     *
+     * @param text
+     * @return
+     */
+    public String update(CharSequence text) {
+        if (text == null) {
+            throw new NullPointerException("text is null");
+        }
+        if (this.mode == GroupMode.CTR) {
+            return this.updateCounter(text);
+        }
+        if (this.mode == GroupMode.CFB || this.mode == GroupMode.OFB) {
+            return this.updateStream(text);
+        }
+        this.pending.append(text);
+        final StringBuilder res = new StringBuilder();
+        //解密时至少暂扣一个分组
+        final int keep = this.encrypt ? this.groupLength - 1 : this.groupLength;
+        int sp = 0;
+        while (this.pending.length() - sp > keep) {
+            res.append(this.updateBlock(this.pending.substring(sp, sp + this.groupLength)));
+            sp += this.groupLength;
+        }
+        this.pending.delete(0, sp);
+        return res.toString();
+    }
+
+    /**
+     * 结束本条消息：加密时以填充字符补足最后一个分组，解密时去掉末尾的填充字符
+     *
+     * @return
+     */
+    public String doFinal() {
+        final StringBuilder res = new StringBuilder();
+        try {
+            if (this.mode == GroupMode.CFB || this.mode == GroupMode.OFB || this.mode == GroupMode.CTR) {
+                return "";
+            }
+            if (this.encrypt) {
+                if (this.pending.length() > 0) {
+                    while (this.pending.length() < this.groupLength) {
+                        this.pending.append(StringSplit.PADDING);
+                    }
+                    res.append(this.updateBlock(this.pending.toString()));
+                }
+                return res.toString();
+            }
+            if (this.pending.length() % this.groupLength != 0) {
+                throw new IllegalArgumentException("参数不合法");
+            }
+            for (int sp = 0; sp < this.pending.length(); sp += this.groupLength) {
+                res.append(this.updateBlock(this.pending.substring(sp, sp + this.groupLength)));
+            }
+            while (res.length() > 0 && res.charAt(res.length() - 1) == StringSplit.PADDING) {
+                res.deleteCharAt(res.length() - 1);
+            }
+            return res.toString();
+        } finally {
+            this.reset();
+        }
+    }
+
+    /**
+     * 一次性处理整条消息
+     *
+     * @param text
+     * @return
+     */
+    public String doFinal(CharSequence text) {
+        final String head = this.update(text);
+        return head.concat(this.doFinal());
+    }
+
+    /**
+     * 复位链接状态，丢弃待处理字符
+     */
+    public void reset() {
+        this.pending.setLength(0);
+        this.last = this.initVector;
+        if (this.mode == GroupMode.CFB || this.mode == GroupMode.OFB) {
+            this.streamRegister = new StreamRegister<>(this.groupPassword);
+            this.streamRegister.init(this.initVector);
+        }
+        this.counter = 0;
+        this.keyStream = null;
+        this.keyStreamPos = 0;
+    }
+
+    /**
+     * 导出当前状态，可在另一个同模式、同密钥、同初始化向量的实例上以restoreState恢复后继续处理
+     * 格式：链接状态（ECB无；CBC为上一分组，CFB/OFB为寄存器内容，各一个分组；CTR为4个字符的计数器与1个字符的分组内位置）
+     * 后接待处理字符
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public String exportState() {
+        final StringBuilder state = new StringBuilder();
+        switch (this.mode) {
+            case CBC:
+                state.append(this.groupPassword.recoverString(this.last));
+                break;
+            case CFB:
+            case OFB:
+                state.append(this.groupPassword.recoverString((T) this.streamRegister.getContent()));
+                break;
+            case CTR:
+                for (int i = Long.BYTES / Character.BYTES - 1; i >= 0; i--) {
+                    state.append((char) (this.counter >>> (i * Character.SIZE)));
+                }
+                state.append((char) (this.keyStream == null ? 0 : this.keyStreamPos));
+                break;
+            default:
+                break;
+        }
+        return state.append(this.pending).toString();
+    }
+
+    /**
+     * 恢复exportState导出的状态
+     *
+     * @param state
+     */
+    public void restoreState(CharSequence state) {
+        if (state == null) {
+            throw new NullPointerException("state is null");
+        }
+        this.reset();
+        int sp = 0;
+        switch (this.mode) {
+            case CBC:
+            case CFB:
+            case OFB:
+                if (state.length() < this.groupLength) {
+                    throw new IllegalArgumentException("状态不合法");
+                }
+                final T chain = this.groupPassword.convertString(state.subSequence(0, this.groupLength).toString());
+                if (this.mode == GroupMode.CBC) {
+                    this.last = chain;
+                } else {
+                    this.streamRegister.init(chain);
+                }
+                sp = this.groupLength;
+                break;
+            case CTR:
+                final int counterChars = Long.BYTES / Character.BYTES;
+                if (state.length() < counterChars + 1) {
+                    throw new IllegalArgumentException("状态不合法");
+                }
+                long counter = 0;
+                for (int i = 0; i < counterChars; i++) {
+                    counter = (counter << Character.SIZE) | state.charAt(i);
+                }
+                this.counter = counter;
+                final int pos = state.charAt(counterChars);
+                if (pos > 0) {
+                    //分组中途：重新生成上一个计数器分组
+                    this.keyStream = this.groupPassword.getCounterBlock(this.iv, counter - 1);
+                    this.keyStreamPos = pos;
+                }
+                sp = counterChars + 1;
+                break;
+            default:
+                break;
+        }
+        this.pending.append(state, sp, state.length());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String updateBlock(String block) {
+        final GroupPassword<T> gp = this.groupPassword;
+        switch (this.mode) {
+            case ECB:
+                return gp.recoverString(this.encrypt
+                        ? gp.encrypt(gp.convertString(block))
+                        : gp.decrypt(gp.convertString(block)));
+            case CBC:
+                if (this.encrypt) {
+                    final T encrypt = gp.encrypt((T) gp.convertString(block).xor(this.last));
+                    this.last = encrypt;
+                    return gp.recoverString(encrypt);
+                }
+                final T pwdObj = gp.convertString(block);
+                final T decrypt = (T) gp.decrypt(pwdObj).xor(this.last);
+                this.last = pwdObj;
+                return gp.recoverString(decrypt);
+            default:
+                throw new IllegalStateException("不支持的分组模式：" + this.mode);
+        }
+    }
+
+    /**
+     * 流密码模式逐字节处理，与GroupPassword的CFB/OFB实现一致
+     */
+    private String updateStream(CharSequence text) {
+        final GroupPassword<T> gp = this.groupPassword;
+        final StringBuilder res = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final byte[] inBytes = gp.charToBytes(text.charAt(i));
+            final byte[] outBytes = new byte[inBytes.length];
+            for (int j = 0; j < inBytes.length; j++) {
+                this.streamRegister.encrypt();
+                final byte bits = this.streamRegister.getBits();
+                outBytes[j] = (byte) (bits ^ inBytes[j]);
+                if (this.mode == GroupMode.OFB) {
+                    this.streamRegister.leftShift(bits);
+                } else {
+                    this.streamRegister.leftShift(this.encrypt ? outBytes[j] : inBytes[j]);
+                }
+            }
+            res.append(gp.bytesToChar(outBytes));
+        }
+        return res.toString();
+    }
+
+    /**
+     * 计数器模式逐字节与计数器分组的密文异或，与GroupPassword的CTR文件加解密一致
+     * （字符按大端拆成两个字节）
+     */
+    private String updateCounter(CharSequence text) {
+        final GroupPassword<T> gp = this.groupPassword;
+        final StringBuilder res = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final byte[] bytes = gp.charToBytes(text.charAt(i));
+            for (int j = 0; j < bytes.length; j++) {
+                if (this.keyStream == null || this.keyStreamPos == this.keyStream.length) {
+                    this.keyStream = gp.getCounterBlock(this.iv, this.counter++);
+                    this.keyStreamPos = 0;
+                }
+                bytes[j] ^= this.keyStream[this.keyStreamPos++];
+            }
+            res.append(gp.bytesToChar(bytes));
+        }
+        return res.toString();
+    }
+}
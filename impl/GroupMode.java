@@ -0,0 +1,27 @@
+package encryption.impl;
+
+/**
+ * 分组密码的工作模式
+ */
+public enum GroupMode {
+    /**
+     * 电子密码本
+     */
+    ECB,
+    /**
+     * 加密区块链
+     */
+    CBC,
+    /**
+     * 加密反馈
+     */
+    CFB,
+    /**
+     * 输出反馈
+     */
+    OFB,
+    /**
+     * 计数器，各分组互不依赖，可随机访问与并行处理
+     */
+    CTR
+}
@@ -1,14 +1,24 @@
 package encryption.impl;
 
 import encryption.impl.blockUtils.StringSplit;
+import encryption.impl.streamUtils.CipherPipeline;
 import encryption.impl.streamUtils.StreamRegister;
 import encryption.impl.streamUtils.Streamable;
+import encryption.utils.BlockTransform;
+import encryption.utils.DispatchPolicy;
+import encryption.utils.FileUtil;
 import encryption.utils.TaskUtil;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 分组加密一般设64Bit或128Bit为一组处理明文
@@ -20,9 +30,18 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
 
 
     protected static final int DEFAULT_GROUP_BIT = SYMMETRIC_LONG_BIT;
+    /**
+     * 生成CTR文件的初始化向量
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
     private final int groupBitSize;
 
     private final T randomObj;
+
+    /**
+     * 自适应调度策略，首次使用时校准
+     */
+    private volatile DispatchPolicy dispatchPolicy;
     /**
      * 混淆矩阵
      */
@@ -61,7 +80,7 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
      * CBC加密区块链
      * CFB加密反馈模式
      * OFB输出反馈模式
-     * CTR计数器模式 (暂不实现)
+     * CTR计数器模式（见文件加解密与GroupCipher）
      * 明文密文面向服务对象String
      * 统一采用StringBuffer容器
      * 块解密需要去掉填充字符
@@ -275,13 +294,13 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
         return this.encrypt_OFB(pwdText);
     }
 
-    private byte[] charToBytes(char c) {
+    byte[] charToBytes(char c) {
         final char lowMask = 0x00ff;
         final char highMask = 0xff00;
         return new byte[]{(byte) ((c & highMask) >> Byte.SIZE), (byte) (c & lowMask)};
     }
 
-    private char bytesToChar(final byte[] bytes) {
+    char bytesToChar(final byte[] bytes) {
         final char mask = 0x00ff;
         char c = 0x0000;
         c |= (bytes[0] & mask);
@@ -296,6 +315,49 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
         }
     }
 
+    /**
+     * 增量加密器，可分多次输入明文，只保留一个分组的链接状态
+     *
+     * @param mode
+     * @return
+     */
+    public GroupCipher<T> newEncryptor(GroupMode mode) {
+        return new GroupCipher<>(this, mode, true);
+    }
+
+    /**
+     * 增量解密器，可分多次输入密文，只保留一个分组的链接状态
+     *
+     * @param mode
+     * @return
+     */
+    public GroupCipher<T> newDecryptor(GroupMode mode) {
+        return new GroupCipher<>(this, mode, false);
+    }
+
+    /**
+     * 初始化向量
+     */
+    T getInitVector() {
+        return this.randomObj;
+    }
+
+    /**
+     * 初始化向量的字节形式，长度为getBlockBytes()
+     */
+    byte[] getInitVectorBytes() {
+        final byte[] iv = new byte[this.getBlockBytes()];
+        this.stringToBytes(this.recoverString(this.randomObj), iv);
+        return iv;
+    }
+
+    /**
+     * 分组的字符数
+     */
+    int getGroupLength() {
+        return this.groupBitSize / Character.SIZE;
+    }
+
     /**
      * 多线程版本
      *  为了可以根据不同的业务场景采用不同的版本接口
@@ -306,54 +368,42 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
      * @param msgText
      * @return
      */
-    @SuppressWarnings("Duplicates")
     public StringBuffer encrypt_ECB_multiply_threads(StringBuffer msgText) {
+        return this.encrypt_ECB_multiply_threads(msgText, 1, TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 限时版本，超时或任一分组失败时立即取消剩余任务并抛出TaskFailedException
+     *
+     * @param msgText
+     * @param timeOut
+     * @param unit
+     * @return
+     */
+    public StringBuffer encrypt_ECB_multiply_threads(StringBuffer msgText, long timeOut, TimeUnit unit) {
+        return this.encrypt_ECB_multiply_threads(msgText, 1, TaskUtil.deadlineOf(timeOut, unit));
+    }
+
+    /**
+     * @param msgText
+     * @param blocksPerTask 每个回调任务处理的分组数
+     * @param deadline      截止时间
+     * @return
+     */
+    @SuppressWarnings("Duplicates")
+    private StringBuffer encrypt_ECB_multiply_threads(StringBuffer msgText, int blocksPerTask, long deadline) {
         this.checkValid(msgText);
         final int taskLength = this.groupBitSize / Character.SIZE;
         this.preDealPadding(msgText, taskLength, StringSplit.PADDING);
         final String target = msgText.toString();
         final int length = target.length();
         final int groupCount = this.getGroupCount(length, taskLength);
-
-        List<Callable<Boolean>> callableList;
-        final String[] strings = new String[groupCount];
-        String substring;
-        int sp = 0, ep = 0;
-
-        final int taskOnceSize = TaskUtil.TASK_ONCE_SIZE;
-        final int taskGroupCount = this.getGroupCount(groupCount, taskOnceSize);
-        final int remainder = groupCount % taskOnceSize;
-        /**
-         * 任务列表再分割，是因为微机内存不足，一次性构造所有回调任务要生成的实例当数据量上去以后很容易出现十分隐蔽的严重漏洞gc heap limit exceed
-         * 分开多次构造是解决该问题的最直接方案
-         * 当然该方案会降低执行效率的
-         * 是健壮性与高效性的折中方案
-         */
-        TaskUtil.initExecutor();
-        int count = taskOnceSize;
-        for (int i = 0; i < taskGroupCount; i++) {
-            if (i == taskGroupCount - 1) {
-                count = remainder;
-            }
-            callableList = new ArrayList<>();
-            for (int j = 0; j < count; j++) {
-                ep += taskLength;
-                if (ep > length) {
-                    ep = length;
-                }
-                substring = target.substring(sp, ep);
-                String s = substring;
-                int idx = i * taskOnceSize + j;
-                callableList.add(() -> {
-                    T encrypt = this.encrypt(this.convertString(s));
-                    strings[idx] = this.recoverString(encrypt);
-                    return true;
-                });
-                sp = ep;
-            }
-            //调用所有任务并发执行，写入主线程的final向量变量strings
-            TaskUtil.invokeAll(callableList, TaskUtil.DEFAULT_TIME_OUT);
-        }
+        //每个分组一个加密单元，调用所有任务并发执行
+        final String[] strings = TaskUtil.invokeBlocks(groupCount, blocksPerTask, deadline, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            T encrypt = this.encrypt(this.convertString(s));
+            return this.recoverString(encrypt);
+        });
 
         StringBuffer res = new StringBuffer();
         //拼接字符串
@@ -367,58 +417,45 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
      * @param pwdText
      * @return
      */
-    @SuppressWarnings("Duplicates")
     public StringBuffer decrypt_ECB_multiply_threads(StringBuffer pwdText) {
+        return this.decrypt_ECB_multiply_threads(pwdText, 1, TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 限时版本，超时或任一分组失败时立即取消剩余任务并抛出TaskFailedException
+     *
+     * @param pwdText
+     * @param timeOut
+     * @param unit
+     * @return
+     */
+    public StringBuffer decrypt_ECB_multiply_threads(StringBuffer pwdText, long timeOut, TimeUnit unit) {
+        return this.decrypt_ECB_multiply_threads(pwdText, 1, TaskUtil.deadlineOf(timeOut, unit));
+    }
+
+    /**
+     * @param pwdText
+     * @param blocksPerTask 每个回调任务处理的分组数
+     * @param deadline      截止时间
+     * @return
+     */
+    @SuppressWarnings("Duplicates")
+    private StringBuffer decrypt_ECB_multiply_threads(StringBuffer pwdText, int blocksPerTask, long deadline) {
         //检查参数合法性
         this.checkValid(pwdText);
         final int taskLength = this.groupBitSize / Character.SIZE;
         this.preCheck(pwdText, taskLength);
         //获取目标字符串
-        String target = pwdText.toString();
+        final String target = pwdText.toString();
         //分组成groupCount , 每组大小taskLength
         final int length = target.length();
         final int groupCount = this.getGroupCount(length, taskLength);
-
-        //构造回调任务列表
-        List<Callable<Boolean>> callableList;
-        String substring;
-        int sp = 0, ep = 0;
-        final String[] strings = new String[groupCount];
-
-        final int taskOnceSize = TaskUtil.TASK_ONCE_SIZE;
-        final int taskGroupCount = this.getGroupCount(groupCount, taskOnceSize);
-        final int remainder = groupCount % taskOnceSize;
-        /**
-         * 任务列表再分割，是因为微机内存不足，一次性构造所有回调任务要生成的实例当数据量上去以后很容易出现十分隐蔽的严重漏洞full gc
-         * 分开多次构造是解决该问题的最直接方案
-         * 当然该方案会降低执行效率的
-         * 是健壮性与高效性的折中方案
-         */
-        TaskUtil.initExecutor();
-        int count = taskOnceSize;
-        for (int i = 0; i < taskGroupCount; i++) {
-            if (i == taskGroupCount - 1) {
-                count = remainder;
-            }
-            callableList = new ArrayList<>();
-            for (int j = 0; j < count; j++) {
-                ep += taskLength;
-                if (ep > length) {
-                    ep = length;
-                }
-                substring = target.substring(sp, ep);
-                String s = substring;
-                int idx = i * taskOnceSize + j;
-                callableList.add(() -> {
-                    T decrypt = this.decrypt(this.convertString(s));
-                    strings[idx] = this.recoverString(decrypt);
-                    return true;
-                });
-                sp = ep;
-            }
-            //调用所有任务并发执行，写入主线程的final向量变量strings
-            TaskUtil.invokeAll(callableList, TaskUtil.DEFAULT_TIME_OUT);
-        }
+        //调用所有任务并发执行
+        final String[] strings = TaskUtil.invokeBlocks(groupCount, blocksPerTask, deadline, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            T decrypt = this.decrypt(this.convertString(s));
+            return this.recoverString(decrypt);
+        });
         final StringBuffer res = new StringBuffer();
         //拼接所有明文字符串
         for (int i = 0; i < groupCount; i++) {
@@ -453,8 +490,30 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
      * @param pwdText
      * @return
      */
-    @SuppressWarnings("Duplicates")
     public StringBuffer decrypt_CBC_multiply_threads(StringBuffer pwdText) {
+        return this.decrypt_CBC_multiply_threads(pwdText, 1, TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 限时版本，超时或任一分组失败时立即取消剩余任务并抛出TaskFailedException
+     *
+     * @param pwdText
+     * @param timeOut
+     * @param unit
+     * @return
+     */
+    public StringBuffer decrypt_CBC_multiply_threads(StringBuffer pwdText, long timeOut, TimeUnit unit) {
+        return this.decrypt_CBC_multiply_threads(pwdText, 1, TaskUtil.deadlineOf(timeOut, unit));
+    }
+
+    /**
+     * @param pwdText
+     * @param blocksPerTask 每个回调任务处理的分组数
+     * @param deadline      截止时间
+     * @return
+     */
+    @SuppressWarnings("Duplicates")
+    private StringBuffer decrypt_CBC_multiply_threads(StringBuffer pwdText, int blocksPerTask, long deadline) {
         //检查参数合法性
         this.checkValid(pwdText);
         final int taskLength = this.groupBitSize / Character.SIZE;
@@ -464,48 +523,15 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
         //对缓冲区字符串分组成groupCount , 每组大小为taskLength
         final int length = target.length();
         final int groupCount = this.getGroupCount(length, taskLength);
-        //遍历分组构造回调任务列表
-        List<Callable<Boolean>> callableList;
-        int sp = 0, ep = 0;
-        String substring;
-        final String[] strings = new String[groupCount];
-        String last = this.recoverString(this.randomObj);
-        final int taskOnceSize = TaskUtil.TASK_ONCE_SIZE;
-        final int taskGroupCount = this.getGroupCount(groupCount, taskOnceSize);
-        final int remainder = groupCount % taskOnceSize;
-        /**
-         * 任务列表再分割，是因为微机内存不足，一次性构造所有回调任务要生成的实例当数据量上去以后很容易出现十分隐蔽的严重漏洞full gc
-         * 分开多次构造是解决该问题的最直接方案
-         * 当然该方案会降低执行效率的
-         * 是健壮性与高效性的折中方案
-         */
-        TaskUtil.initExecutor();
-        int count = taskOnceSize;
-        for (int i = 0; i < taskGroupCount; i++) {
-            if (i == taskGroupCount - 1) {
-                count = remainder;
-            }
-            callableList = new ArrayList<>();
-            for (int j = 0; j < count; j++) {
-                ep += taskLength;
-                if (ep > length) {
-                    ep = length;
-                }
-                substring = target.substring(sp, ep);
-                String lastDeal = last;
-                String s = substring;
-                int idx = i * taskOnceSize + j;
-                callableList.add(() -> {
-                    T decrypt = this.decrypt(this.convertString(s));
-                    strings[idx] = this.recoverString((T) decrypt.xor(this.convertString(lastDeal)));
-                    return true;
-                });
-                last = s;
-                sp = ep;
-            }
-            //调用所有任务并发执行，写入主线程的final向量变量strings
-            TaskUtil.invokeAll(callableList);
-        }
+        final String first = this.recoverString(this.randomObj);
+        //每个分组的解密只依赖其前一分组的密文，调用所有任务并发执行
+        final String[] strings = TaskUtil.invokeBlocks(groupCount, blocksPerTask, deadline, idx -> {
+            final int sp = idx * taskLength;
+            final String s = target.substring(sp, Math.min(sp + taskLength, length));
+            final String lastDeal = idx == 0 ? first : target.substring(sp - taskLength, sp);
+            T decrypt = this.decrypt(this.convertString(s));
+            return this.recoverString((T) decrypt.xor(this.convertString(lastDeal)));
+        });
         //将strings中的字符串元素拼接到res字符串缓冲区中返回
         StringBuffer res = new StringBuffer();
         for (int i = 0; i < groupCount; i++) {
@@ -515,12 +541,510 @@ public abstract class GroupPassword<T extends Streamable> extends SymKeyEncrypti
         return res;
     }
 
-    private int getGroupCount(int totalLength, int unitLength) {
-        return (totalLength - 1) / unitLength + 1;
+    /**
+     * 自适应版本
+     * 按启动时校准的单块开销，由负载大小选择串行或并行以及任务粒度，
+     * 调用方不必再在单线程与多线程版本间手动选择
+     */
+
+    /**
+     * ECB自适应加密
+     *
+     * @param msgText
+     * @return
+     */
+    public StringBuffer encrypt_ECB_adaptive(StringBuffer msgText) {
+        this.checkValid(msgText);
+        final int blockCount = this.getGroupCount(msgText.length(), this.groupBitSize / Character.SIZE);
+        final DispatchPolicy policy = this.calibrate();
+        if (!policy.isParallel(blockCount)) {
+            return this.encrypt_ECB(msgText);
+        }
+        return this.encrypt_ECB_multiply_threads(msgText, policy.getBlocksPerTask(blockCount), TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * ECB自适应解密
+     *
+     * @param pwdText
+     * @return
+     */
+    public StringBuffer decrypt_ECB_adaptive(StringBuffer pwdText) {
+        this.checkValid(pwdText);
+        final int blockCount = this.getGroupCount(pwdText.length(), this.groupBitSize / Character.SIZE);
+        final DispatchPolicy policy = this.calibrate();
+        if (!policy.isParallel(blockCount)) {
+            return this.decrypt_ECB(pwdText);
+        }
+        return this.decrypt_ECB_multiply_threads(pwdText, policy.getBlocksPerTask(blockCount), TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * CBC自适应解密（CBC加密存在链式依赖，只能串行）
+     *
+     * @param pwdText
+     * @return
+     */
+    public StringBuffer decrypt_CBC_adaptive(StringBuffer pwdText) {
+        this.checkValid(pwdText);
+        final int blockCount = this.getGroupCount(pwdText.length(), this.groupBitSize / Character.SIZE);
+        final DispatchPolicy policy = this.calibrate();
+        if (!policy.isParallel(blockCount)) {
+            return this.decrypt_CBC(pwdText);
+        }
+        return this.decrypt_CBC_multiply_threads(pwdText, policy.getBlocksPerTask(blockCount), TaskUtil.NO_DEADLINE);
+    }
+
+    /**
+     * 异步版本
+     * 返回的CompletableFuture在调用方提供的执行器上完成，可继续组合，
+     * 可分块并行的模式（ECB、CBC解密）按调度策略把分组拆成多个任务提交，
+     * 链式依赖的模式整体作为一个任务提交
+     */
+
+    /**
+     * ECB异步加密
+     *
+     * @param msgText
+     * @param executor
+     * @return
+     */
+    @SuppressWarnings("Duplicates")
+    public CompletableFuture<StringBuffer> encryptAsync_ECB(StringBuffer msgText, Executor executor) {
+        this.checkValid(msgText);
+        final int taskLength = this.groupBitSize / Character.SIZE;
+        this.preDealPadding(msgText, taskLength, StringSplit.PADDING);
+        final String target = msgText.toString();
+        final int length = target.length();
+        final int groupCount = this.getGroupCount(length, taskLength);
+        return TaskUtil.invokeBlocksAsync(groupCount, this::getAsyncBlocksPerTask, executor, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            T encrypt = this.encrypt(this.convertString(s));
+            return this.recoverString(encrypt);
+        }, strings -> {
+            final StringBuffer res = new StringBuffer();
+            for (String string : strings) {
+                res.append(string);
+            }
+            return res;
+        });
+    }
+
+    /**
+     * ECB异步解密
+     *
+     * @param pwdText
+     * @param executor
+     * @return
+     */
+    @SuppressWarnings("Duplicates")
+    public CompletableFuture<StringBuffer> decryptAsync_ECB(StringBuffer pwdText, Executor executor) {
+        this.checkValid(pwdText);
+        final int taskLength = this.groupBitSize / Character.SIZE;
+        this.preCheck(pwdText, taskLength);
+        final String target = pwdText.toString();
+        final int length = target.length();
+        final int groupCount = this.getGroupCount(length, taskLength);
+        return TaskUtil.invokeBlocksAsync(groupCount, this::getAsyncBlocksPerTask, executor, idx -> {
+            final String s = target.substring(idx * taskLength, Math.min((idx + 1) * taskLength, length));
+            T decrypt = this.decrypt(this.convertString(s));
+            return this.recoverString(decrypt);
+        }, strings -> {
+            final StringBuffer res = new StringBuffer();
+            for (String string : strings) {
+                res.append(string);
+            }
+            this.filterTailPadding(res, StringSplit.PADDING);
+            return res;
+        });
+    }
+
+    /**
+     * CBC异步加密（链式依赖，整体一个任务）
+     *
+     * @param msgText
+     * @param executor
+     * @return
+     */
+    public CompletableFuture<StringBuffer> encryptAsync_CBC(StringBuffer msgText, Executor executor) {
+        this.checkValid(msgText);
+        return CompletableFuture.supplyAsync(() -> this.encrypt_CBC(msgText), executor);
+    }
+
+    /**
+     * CBC异步解密
+     *
+     * @param pwdText
+     * @param executor
+     * @return
+     */
+    @SuppressWarnings("Duplicates")
+    public CompletableFuture<StringBuffer> decryptAsync_CBC(StringBuffer pwdText, Executor executor) {
+        this.checkValid(pwdText);
+        final int taskLength = this.groupBitSize / Character.SIZE;
+        this.preCheck(pwdText, taskLength);
+        final String target = pwdText.toString();
+        final int length = target.length();
+        final int groupCount = this.getGroupCount(length, taskLength);
+        final String first = this.recoverString(this.randomObj);
+        return TaskUtil.invokeBlocksAsync(groupCount, this::getAsyncBlocksPerTask, executor, idx -> {
+            final int sp = idx * taskLength;
+            final String s = target.substring(sp, Math.min(sp + taskLength, length));
+            final String lastDeal = idx == 0 ? first : target.substring(sp - taskLength, sp);
+            T decrypt = this.decrypt(this.convertString(s));
+            return this.recoverString((T) decrypt.xor(this.convertString(lastDeal)));
+        }, strings -> {
+            final StringBuffer res = new StringBuffer();
+            for (String string : strings) {
+                res.append(string);
+            }
+            this.filterTailPadding(res, StringSplit.PADDING);
+            return res;
+        });
+    }
+
+    public CompletableFuture<StringBuffer> encryptAsync_CFB(StringBuffer msgText, Executor executor) {
+        this.checkValid(msgText);
+        return CompletableFuture.supplyAsync(() -> this.encrypt_CFB(msgText), executor);
+    }
+
+    public CompletableFuture<StringBuffer> decryptAsync_CFB(StringBuffer pwdText, Executor executor) {
+        this.checkValid(pwdText);
+        return CompletableFuture.supplyAsync(() -> this.decrypt_CFB(pwdText), executor);
+    }
+
+    public CompletableFuture<StringBuffer> encryptAsync_OFB(StringBuffer msgText, Executor executor) {
+        this.checkValid(msgText);
+        return CompletableFuture.supplyAsync(() -> this.encrypt_OFB(msgText), executor);
+    }
+
+    public CompletableFuture<StringBuffer> decryptAsync_OFB(StringBuffer pwdText, Executor executor) {
+        this.checkValid(pwdText);
+        return CompletableFuture.supplyAsync(() -> this.decrypt_OFB(pwdText), executor);
+    }
+
+    /**
+     * 异步拆分粒度：负载小时整体一个任务，否则按调度策略的粒度拆分
+     *
+     * @param groupCount
+     * @return
+     */
+    private int getAsyncBlocksPerTask(int groupCount) {
+        final DispatchPolicy policy = this.calibrate();
+        if (!policy.isParallel(groupCount)) {
+            return Math.max(1, groupCount);
+        }
+        return policy.getBlocksPerTask(groupCount);
+    }
+
+    /**
+     * 校准调度策略，可在启动时主动调用，否则在首次自适应调用时进行
+     *
+     * @return
+     */
+    public DispatchPolicy calibrate() {
+        DispatchPolicy policy = this.dispatchPolicy;
+        if (policy == null) {
+            synchronized (this) {
+                policy = this.dispatchPolicy;
+                if (policy == null) {
+                    final T sample = this.convertString(this.format("calibrate", this.groupBitSize / Character.SIZE));
+                    policy = DispatchPolicy.calibrate(() -> this.encrypt(sample));
+                    this.dispatchPolicy = policy;
+                }
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * 文件加解密
+     * 文件按字节处理，分组由相邻字节直接组成，不经过字符集编码，
+     * 不同映射区域由多个线程并行加解密，文件大小不受堆内存限制
+     * ECB：密文文件头部为8字节明文长度（大端），其后为以0补足最后一个分组的密文
+     * CTR：密文文件头部为每个文件随机生成的初始化向量（分组字节数），其后第i个分组与 E(初始化向量 xor i) 异或，
+     * 可原地加解密（src与dst为同一文件），此时内容整体后移（加密）或前移（解密）一个初始化向量的长度
+     */
+
+    /**
+     * ECB文件加密，dst不能与src为同一文件
+     *
+     * @param src
+     * @param dst
+     * @throws IOException
+     */
+    public void encryptFile_ECB(File src, File dst) throws IOException {
+        this.checkFiles(src, dst, false);
+        final int blockBytes = this.getBlockBytes();
+        try (
+                FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            final long length = in.size();
+            final long padded = (length + blockBytes - 1) / blockBytes * blockBytes;
+            final ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(0, length);
+            out.write(header, 0);
+            FileUtil.transformMapped(in, 0, length, out, Long.BYTES, padded, blockBytes,
+                    (idx, block, len) -> this.encryptBlock(block));
+        }
+    }
+
+    /**
+     * ECB文件解密，dst不能与src为同一文件
+     *
+     * @param src
+     * @param dst
+     * @throws IOException
+     */
+    public void decryptFile_ECB(File src, File dst) throws IOException {
+        this.checkFiles(src, dst, false);
+        final int blockBytes = this.getBlockBytes();
+        try (
+                FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            final ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            while (header.hasRemaining()) {
+                if (in.read(header, header.position()) <= 0) {
+                    throw new IllegalArgumentException("密文文件缺少长度头");
+                }
+            }
+            final long length = header.getLong(0);
+            final long body = in.size() - Long.BYTES;
+            if (length < 0 || body % blockBytes != 0 || body != (length + blockBytes - 1) / blockBytes * blockBytes) {
+                throw new IllegalArgumentException("密文文件长度不合法");
+            }
+            FileUtil.transformMapped(in, Long.BYTES, body, out, 0, length, blockBytes,
+                    (idx, block, len) -> this.decryptBlock(block));
+        }
+    }
+
+    /**
+     * CTR文件加密，dst与src为同一文件时原地加密
+     *
+     * @param src
+     * @param dst
+     * @throws IOException
+     */
+    public void encryptFile_CTR(File src, File dst) throws IOException {
+        this.checkFiles(src, dst, true);
+        final byte[] iv = new byte[this.getBlockBytes()];
+        RANDOM.nextBytes(iv);
+        final BlockTransform xor = (idx, block, len) -> this.xorCounterBlock(iv, idx, block, len);
+        if (src.getCanonicalFile().equals(dst.getCanonicalFile())) {
+            try (
+                    FileChannel channel = FileChannel.open(src.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+            ) {
+                final long length = channel.size();
+                FileUtil.moveRegion(channel, 0, length, iv.length);
+                writeFully(channel, ByteBuffer.wrap(iv), 0);
+                FileUtil.transformMapped(channel, iv.length, length, channel, iv.length, length, iv.length, xor);
+            }
+            return;
+        }
+        try (
+                FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            final long length = in.size();
+            writeFully(out, ByteBuffer.wrap(iv), 0);
+            FileUtil.transformMapped(in, 0, length, out, iv.length, length, iv.length, xor);
+        }
     }
 
-    protected void finalize() {
-        TaskUtil.recycleExecutor();
+    /**
+     * CTR文件解密，初始化向量取自密文文件头部，dst与src为同一文件时原地解密
+     *
+     * @param src
+     * @param dst
+     * @throws IOException
+     */
+    public void decryptFile_CTR(File src, File dst) throws IOException {
+        this.checkFiles(src, dst, true);
+        final byte[] iv = new byte[this.getBlockBytes()];
+        final BlockTransform xor = (idx, block, len) -> this.xorCounterBlock(iv, idx, block, len);
+        if (src.getCanonicalFile().equals(dst.getCanonicalFile())) {
+            try (
+                    FileChannel channel = FileChannel.open(src.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+            ) {
+                final long length = readInitVector(channel, iv);
+                FileUtil.transformMapped(channel, iv.length, length, channel, iv.length, length, iv.length, xor);
+                FileUtil.moveRegion(channel, iv.length, length, 0);
+                channel.truncate(length);
+            }
+            return;
+        }
+        try (
+                FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            final long length = readInitVector(in, iv);
+            FileUtil.transformMapped(in, iv.length, length, out, 0, length, iv.length, xor);
+        }
+    }
+
+    /**
+     * 读出CTR密文文件头部的初始化向量
+     *
+     * @return 其后的密文长度
+     */
+    private static long readInitVector(FileChannel channel, byte[] iv) throws IOException {
+        final ByteBuffer header = ByteBuffer.wrap(iv);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) <= 0) {
+                throw new IllegalArgumentException("密文文件缺少初始化向量");
+            }
+        }
+        return channel.size() - iv.length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 任意模式的文件加密，经读/加密/写重叠的流水线，密文格式同CipherOutputStream
+     * 链式模式（CBC/CFB/OFB）无法并行时用它隐藏磁盘等待
+     *
+     * @param src
+     * @param dst
+     * @param mode
+     * @return 写出的字节数
+     * @throws IOException
+     */
+    public long encryptFile(File src, File dst, GroupMode mode) throws IOException {
+        this.checkFiles(src, dst, false);
+        return new CipherPipeline().transform(src, dst, this.newEncryptor(mode));
+    }
+
+    /**
+     * encryptFile的逆过程
+     *
+     * @param src
+     * @param dst
+     * @param mode
+     * @return 写出的字节数
+     * @throws IOException
+     */
+    public long decryptFile(File src, File dst, GroupMode mode) throws IOException {
+        this.checkFiles(src, dst, false);
+        return new CipherPipeline().transform(src, dst, this.newDecryptor(mode));
+    }
+
+    private void checkFiles(File src, File dst, boolean allowSame) throws IOException {
+        if (src == null) {
+            throw new NullPointerException("src is null");
+        }
+        if (dst == null) {
+            throw new NullPointerException("dst is null");
+        }
+        if (!allowSame && src.getCanonicalFile().equals(dst.getCanonicalFile())) {
+            throw new IllegalArgumentException("该模式不支持原地加解密");
+        }
+    }
+
+    /**
+     * 分组的字节数
+     *
+     * @return
+     */
+    public int getBlockBytes() {
+        return this.groupBitSize / Byte.SIZE;
+    }
+
+    private void encryptBlock(byte[] block) {
+        final String res = this.recoverString(this.encrypt(this.convertString(this.bytesToString(block))));
+        this.stringToBytes(res, block);
+    }
+
+    private void decryptBlock(byte[] block) {
+        final String res = this.recoverString(this.decrypt(this.convertString(this.bytesToString(block))));
+        this.stringToBytes(res, block);
+    }
+
+    /**
+     * CTR：分组与第blockIndex个计数器分组的密文异或
+     */
+    private void xorCounterBlock(byte[] iv, long blockIndex, byte[] block, int length) {
+        final byte[] keyStream = this.getCounterBlock(iv, blockIndex);
+        for (int i = 0; i < length; i++) {
+            block[i] ^= keyStream[i];
+        }
+    }
+
+    /**
+     * 第counter个计数器分组的密文：初始化向量末8字节与计数器（大端）异或后加密
+     *
+     * @param iv
+     * @param counter
+     * @return
+     */
+    byte[] getCounterBlock(byte[] iv, long counter) {
+        final byte[] block = Arrays.copyOf(iv, iv.length);
+        for (int i = 0; i < Long.BYTES && i < block.length; i++) {
+            block[block.length - 1 - i] ^= (byte) (counter >>> (i * Byte.SIZE));
+        }
+        this.encryptBlock(block);
+        return block;
+    }
+
+    /**
+     * 以调用方给定的初始化向量做CTR加解密（两者相同），bytes[off]对应第firstCounter个计数器分组的首字节
+     * 初始化向量由调用方保存（如写在密文头部），不依赖本实例的内部初始化向量，可跨进程解密
+     *
+     * @param iv           长度须为getBlockBytes()
+     * @param firstCounter
+     * @param bytes
+     * @param off
+     * @param len
+     */
+    public void crypt_CTR(byte[] iv, long firstCounter, byte[] bytes, int off, int len) {
+        if (iv == null) {
+            throw new NullPointerException("iv is null");
+        }
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        final int blockBytes = this.getBlockBytes();
+        if (iv.length != blockBytes) {
+            throw new IllegalArgumentException("初始化向量长度应为" + blockBytes);
+        }
+        if (off < 0 || len < 0 || off + len > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int sp = 0; sp < len; sp += blockBytes) {
+            final byte[] keyStream = this.getCounterBlock(iv, firstCounter + sp / blockBytes);
+            final int n = Math.min(blockBytes, len - sp);
+            for (int i = 0; i < n; i++) {
+                bytes[off + sp + i] ^= keyStream[i];
+            }
+        }
+    }
+
+    String bytesToString(byte[] bytes) {
+        final char[] chars = new char[bytes.length / Character.BYTES];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = this.bytesToChar(new byte[]{bytes[i * Character.BYTES], bytes[i * Character.BYTES + 1]});
+        }
+        return new String(chars);
+    }
+
+    private void stringToBytes(String string, byte[] bytes) {
+        for (int i = 0; i < string.length() && i * Character.BYTES < bytes.length; i++) {
+            final byte[] pair = this.charToBytes(string.charAt(i));
+            bytes[i * Character.BYTES] = pair[0];
+            bytes[i * Character.BYTES + 1] = pair[1];
+        }
+    }
+
+    private int getGroupCount(int totalLength, int unitLength) {
+        return (totalLength - 1) / unitLength + 1;
     }
 
 }
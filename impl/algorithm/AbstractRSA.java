@@ -0,0 +1,243 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.BlockPassword;
+import encryption.impl.bigInteger.BigInteger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * RSA族（两素数RSA与多素数RSA）的公共部分
+ * 公钥运算与分组方式相同：c = m ^ e % n，明文密文均为数串<->整数；
+ * 以本实例的私钥解密时盲化后交给子类的CRT实现，其余私钥直接做模n的幂运算
+ */
+@SuppressWarnings("JavaDoc")
+public abstract class AbstractRSA extends BlockPassword<BigInteger> {
+
+    protected final BigInteger n;
+
+    protected BigInteger e;
+    protected BigInteger d;
+
+    /**
+     * CRT中各幂运算是否分到多个线程上执行
+     */
+    protected volatile boolean parallelCrt;
+
+    /**
+     * 私钥运算的底数盲化，默认开启
+     */
+    private final Blinding blinding;
+    private volatile boolean blindingEnabled = true;
+
+    protected AbstractRSA(BigInteger n, BigInteger e, BigInteger d) {
+        super(n.bitLength() / 4);
+        this.n = n;
+        this.e = e;
+        this.d = d;
+        this.blinding = new Blinding(n, e);
+    }
+
+    /**
+     * 以本实例的私钥计算 c ^ d % n，由子类按中国剩余定理实现
+     *
+     * @param c
+     * @return
+     */
+    protected abstract BigInteger getResultOfCRT(BigInteger c);
+
+    /**
+     * 获取该次加密中n的bit数
+     *
+     * @return
+     */
+    @Override
+    protected int getBitLength() {
+        return this.n.bitLength();
+    }
+
+    @Override
+    public BigInteger convertString(String text) {
+        if (text == null) {
+            throw new NullPointerException("text is null");
+        }
+        return BigInteger.valueOfString(text);
+    }
+
+    @Override
+    public String recoverString(BigInteger obj) {
+        if (obj == null) {
+            throw new NullPointerException("obj is null");
+        }
+        return obj.stringOfValue();
+    }
+
+    /**
+     * 密文分组直接按定长输出
+     *
+     * @param obj
+     * @param length
+     * @return
+     */
+    @Override
+    protected String recoverString(BigInteger obj, int length) {
+        if (obj == null) {
+            throw new NullPointerException("obj is null");
+        }
+        return obj.stringOfValue(length);
+    }
+
+    /**
+     * 加密
+     *
+     * @param msg
+     * @return
+     */
+    @Override
+    public BigInteger encrypt(BigInteger msg, BigInteger publicKey) {
+        return msg.modPow(publicKey, this.n);
+    }
+
+    /**
+     * 解密，以本实例的私钥解密时走CRT
+     *
+     * @param pwd
+     * @return
+     */
+    @Override
+    public BigInteger decrypt(BigInteger pwd, BigInteger privateKey) {
+        if (privateKey != null && privateKey.equals(this.d)) {
+            if (!this.blindingEnabled) {
+                return this.getResultOfCRT(pwd);
+            }
+            final Blinding.Pair pair = this.blinding.next();
+            return this.blinding.unblind(this.getResultOfCRT(this.blinding.blind(pwd, pair)), pair);
+        }
+        return pwd.modPow(privateKey, this.n);
+    }
+
+    /**
+     * CRT的各幂运算是否并行，多核且对单次解密的延迟敏感时开启；
+     * 外层已按分组并行且占满各核时可关闭
+     *
+     * @param parallelCrt
+     */
+    public void setParallelCrt(boolean parallelCrt) {
+        this.parallelCrt = parallelCrt;
+    }
+
+    /**
+     * 私钥运算是否盲化，只有在不可能被计时攻击的场合才应关闭
+     *
+     * @param blindingEnabled
+     */
+    public void setBlinding(boolean blindingEnabled) {
+        this.blindingEnabled = blindingEnabled;
+    }
+
+    /**
+     * 获取公钥，对外提供接口
+     *
+     * @return
+     */
+    public String getPublicKeyOfN() {
+        return this.n.toString();
+    }
+
+    /**
+     * 获取公钥，对外提供接口
+     *
+     * @return
+     */
+    public String getPublicKeyOfE(String n) {
+        if (n == null) {
+            throw new NullPointerException("n is null");
+        }
+        if (!n.equals(this.n.toString())) {
+            return null;
+        }
+        return this.e.toString();
+    }
+
+    /**
+     * 获取私钥，对外只提供给服务器端
+     *
+     * @return
+     */
+    public String getPrivateKey(String e, String n) {
+        if (e == null) {
+            throw new NullPointerException("e is null");
+        }
+        if (n == null) {
+            throw new NullPointerException("n is null");
+        }
+        if (
+                !n.equals(this.n.toString())
+                        || !e.equals(this.e.toString())
+        ) {
+            return null;
+        }
+        return this.d.toString();
+    }
+
+    /*
+      须注意加解密都不用编码序列化的方法（如convertString , recoverString ， 即字符串<->整数的方法）
+      直接返回this.toString（即BigInteger.toString）,即都是数串<->整数
+     */
+
+    /**
+     * 对外加密接口（应用ECB版本，按负载自适应串行或并行）
+     *
+     * @param msg
+     * @param eStr
+     * @param nStr
+     * @return
+     */
+    public StringBuffer encrypt(StringBuffer msg, String eStr, String nStr) {
+        this.checkPublicKey(eStr, nStr);
+        return this.encrypt_ECB_adaptive(msg, new BigInteger(eStr));
+    }
+
+    /**
+     * 对外解密接口（应用ECB版本，按负载自适应串行或并行）
+     */
+    public StringBuffer decrypt(StringBuffer pwd, String dStr, String nStr) {
+        this.checkModulus(nStr);
+        return this.decrypt_ECB_adaptive(pwd, new BigInteger(dStr));
+    }
+
+    /**
+     * 对外异步加密接口，在executor上完成
+     *
+     * @param msg
+     * @param eStr
+     * @param nStr
+     * @param executor
+     * @return
+     */
+    public CompletableFuture<StringBuffer> encryptAsync(StringBuffer msg, String eStr, String nStr, Executor executor) {
+        this.checkPublicKey(eStr, nStr);
+        return this.encryptAsync_ECB(msg, new BigInteger(eStr), executor);
+    }
+
+    /**
+     * 对外异步解密接口，在executor上完成
+     */
+    public CompletableFuture<StringBuffer> decryptAsync(StringBuffer pwd, String dStr, String nStr, Executor executor) {
+        this.checkModulus(nStr);
+        return this.decryptAsync_ECB(pwd, new BigInteger(dStr), executor);
+    }
+
+    private void checkModulus(String nStr) {
+        if (!this.n.toString().equals(nStr)) {
+            throw new IllegalArgumentException("提供的n与当前RSA的n不一致");
+        }
+    }
+
+    private void checkPublicKey(String eStr, String nStr) {
+        this.checkModulus(nStr);
+        if (!this.e.toString().equals(eStr)) {
+            throw new IllegalArgumentException("提供的e与当前RSA的e不一样");
+        }
+    }
+}
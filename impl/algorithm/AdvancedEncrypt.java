@@ -18,6 +18,11 @@ import java.util.Objects;
  */
 public class AdvancedEncrypt extends SP<ByteMatrix> {
 
+    /**
+     * 密钥的字符数，更长的密钥只取前KEY_CHARS个字符
+     */
+    public static final int KEY_CHARS = SYMMETRIC_LONG_BIT / Character.SIZE;
+
     protected int groupSize = 128;
 
     private static AdvancedEncrypt instance;
@@ -35,6 +40,19 @@ public class AdvancedEncrypt extends SP<ByteMatrix> {
         return instance;
     }
 
+    /**
+     * 以给定密钥构造新实例，不影响getInstance的共享实例
+     *
+     * @param key
+     * @return
+     */
+    public static AdvancedEncrypt newInstance(String key) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        return new AdvancedEncrypt(key);
+    }
+
     @Override
     protected ByteMatrix convertString(String text) {
         if (Objects.isNull(text)) {
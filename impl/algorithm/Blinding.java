@@ -0,0 +1,165 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.bigInteger.BigInteger;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 私钥运算的底数盲化
+ * 解密前把密文乘以 r^e，幂运算得到 m * r，再乘以 r^-1 还原，使私钥幂运算的输入与密文无关，抵御计时攻击
+ * 盲化对(r^e, r^-1)每次使用后平方得到下一对（(r^2)^e = (r^e)^2，(r^2)^-1 = (r^-1)^2），只需两次模乘；
+ * 每对盲化对连续平方使用REUSE_LIMIT次后换成池中用新随机数生成的一对（新生成一对需要模逆，约为一次平方的15到30倍），
+ * 池由所有密钥共享的后台线程补充，请求路径上不做模逆运算；池空时继续平方使用当前一对
+ * 线程安全
+ */
+final class Blinding {
+
+    static final int DEFAULT_CAPACITY = 4;
+    /**
+     * 每对新盲化对平方使用的次数
+     */
+    private static final int REUSE_LIMIT = 32;
+
+    /**
+     * 所有密钥共用的补充线程
+     */
+    private static final ExecutorService REFILLER = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "rsa-blinding-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BigInteger n;
+    private final BigInteger e;
+    private final Random random = new SecureRandom();
+    private final BlockingQueue<Pair> ready;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * 当前盲化对，每次交出后替换为其平方，持有本对象锁时访问
+     */
+    private Pair current;
+    private int uses;
+
+    /**
+     * 盲化对
+     */
+    static final class Pair {
+        private final BigInteger blind;
+        private final BigInteger unblind;
+
+        private Pair(BigInteger blind, BigInteger unblind) {
+            this.blind = blind;
+            this.unblind = unblind;
+        }
+
+        private Pair square(BigInteger n) {
+            return new Pair(this.blind.multiply(this.blind).mod(n), this.unblind.multiply(this.unblind).mod(n));
+        }
+    }
+
+    Blinding(BigInteger n, BigInteger e) {
+        this(n, e, DEFAULT_CAPACITY);
+    }
+
+    Blinding(BigInteger n, BigInteger e, int capacity) {
+        if (n == null || e == null) {
+            throw new NullPointerException("n or e is null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.n = n;
+        this.e = e;
+        this.ready = new ArrayBlockingQueue<>(capacity);
+        this.current = this.newPair();
+        this.refill();
+    }
+
+    /**
+     * c * r^e % n
+     *
+     * @param c
+     * @param pair
+     * @return
+     */
+    BigInteger blind(BigInteger c, Pair pair) {
+        return c.multiply(pair.blind).mod(this.n);
+    }
+
+    /**
+     * m * r^-1 % n
+     *
+     * @param m
+     * @param pair
+     * @return
+     */
+    BigInteger unblind(BigInteger m, Pair pair) {
+        return m.multiply(pair.unblind).mod(this.n);
+    }
+
+    /**
+     * 取一对盲化对：当前一对用满REUSE_LIMIT次且池中有新的一对时换新，否则取上一对的平方
+     *
+     * @return
+     */
+    Pair next() {
+        final Pair pair;
+        boolean renewed = false;
+        synchronized (this) {
+            if (this.uses >= REUSE_LIMIT) {
+                final Pair fresh = this.ready.poll();
+                if (fresh != null) {
+                    this.current = fresh;
+                    this.uses = 0;
+                    renewed = true;
+                }
+            }
+            pair = this.current;
+            this.current = pair.square(this.n);
+            this.uses++;
+        }
+        if (renewed) {
+            this.refill();
+        }
+        return pair;
+    }
+
+    private void refill() {
+        if (!this.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        REFILLER.execute(() -> {
+            try {
+                while (this.ready.remainingCapacity() > 0) {
+                    this.ready.offer(this.newPair());
+                }
+            } finally {
+                this.refilling.set(false);
+            }
+        });
+    }
+
+    /**
+     * 用新随机数r生成(r^e, r^-1)，r与n不互质时重取
+     */
+    private Pair newPair() {
+        while (true) {
+            final BigInteger r = new BigInteger(this.n.bitLength() - 1, this.random);
+            if (r.compareTo(BigInteger.ONE) <= 0) {
+                continue;
+            }
+            try {
+                return new Pair(r.modPow(this.e, this.n), r.modInverse(this.n));
+            } catch (ArithmeticException ex) {
+                //r与n不互质
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package encryption.impl.algorithm;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * 固定模数、固定指数的模幂运算
+ * 同一密钥的各个分组共用：
+ * 1.Montgomery常数：R = 2^k（k为模数比特数），n' = -n^-1 mod R，R^2 mod n
+ * 2.指数的滑动窗口分解：每一步先平方若干次再乘以底数的某个奇数次幂，只在构造时分解一次
+ * 每个分组只需计算底数的奇数次幂表，然后按分解结果依次执行
+ * 模数须为奇数；不可变，可被多个线程共享
+ */
+final class MontgomeryPow {
+
+    /**
+     * 与JDK相同的窗口宽度阈值：指数比特数超过第i项时窗口宽度取i + 2
+     */
+    private static final int[] WINDOW_THRESHOLDS = {7, 25, 81, 241, 673, 1793};
+
+    private final BigInteger modulus;
+    private final int k;
+    private final BigInteger mask;
+    private final BigInteger nPrime;
+    private final BigInteger r2;
+
+    private final int window;
+    /**
+     * 分解结果：第i步先平方squares[i]次，再乘以底数的digits[i]次幂（奇数，0表示不乘）
+     */
+    private final int[] squares;
+    private final int[] digits;
+
+    MontgomeryPow(BigInteger modulus, BigInteger exponent) {
+        if (modulus == null || exponent == null) {
+            throw new NullPointerException("modulus or exponent is null");
+        }
+        if (!modulus.testBit(0) || modulus.compareTo(BigInteger.ONE) <= 0) {
+            throw new IllegalArgumentException("模数须为大于1的奇数");
+        }
+        if (exponent.signum() < 0) {
+            throw new IllegalArgumentException("指数不能为负");
+        }
+        this.modulus = modulus;
+        this.k = modulus.bitLength();
+        final BigInteger r = BigInteger.ONE.shiftLeft(this.k);
+        this.mask = r.subtract(BigInteger.ONE);
+        this.nPrime = r.subtract(modulus.modInverse(r));
+        this.r2 = BigInteger.ONE.shiftLeft(this.k * 2).mod(modulus);
+
+        int window = 1;
+        while (window - 1 < WINDOW_THRESHOLDS.length && exponent.bitLength() > WINDOW_THRESHOLDS[window - 1]) {
+            window++;
+        }
+        this.window = window;
+
+        //从高位到低位的滑动窗口分解
+        final int[] squares = new int[exponent.bitLength() + 1];
+        final int[] digits = new int[exponent.bitLength() + 1];
+        int steps = 0;
+        int pendingSquares = 0;
+        int i = exponent.bitLength() - 1;
+        while (i >= 0) {
+            if (!exponent.testBit(i)) {
+                pendingSquares++;
+                i--;
+                continue;
+            }
+            //取以第i位开头、以1结尾的最长窗口
+            int low = Math.max(0, i - window + 1);
+            while (!exponent.testBit(low)) {
+                low++;
+            }
+            int digit = 0;
+            for (int j = i; j >= low; j--) {
+                digit = (digit << 1) | (exponent.testBit(j) ? 1 : 0);
+            }
+            squares[steps] = pendingSquares + (i - low + 1);
+            digits[steps] = digit;
+            steps++;
+            pendingSquares = 0;
+            i = low - 1;
+        }
+        if (pendingSquares > 0) {
+            squares[steps] = pendingSquares;
+            digits[steps] = 0;
+            steps++;
+        }
+        this.squares = Arrays.copyOf(squares, steps);
+        this.digits = Arrays.copyOf(digits, steps);
+    }
+
+    /**
+     * base ^ exponent % modulus
+     *
+     * @param base
+     * @return
+     */
+    BigInteger pow(BigInteger base) {
+        final BigInteger b = this.toMontgomery(base.mod(this.modulus));
+        //底数的奇数次幂表 b^1, b^3, ..., b^(2^window - 1)
+        final BigInteger[] table = new BigInteger[1 << (this.window - 1)];
+        table[0] = b;
+        if (table.length > 1) {
+            final BigInteger b2 = this.multiply(b, b);
+            for (int i = 1; i < table.length; i++) {
+                table[i] = this.multiply(table[i - 1], b2);
+            }
+        }
+        BigInteger acc = null;
+        for (int step = 0; step < this.squares.length; step++) {
+            if (acc != null) {
+                for (int s = 0; s < this.squares[step]; s++) {
+                    acc = this.multiply(acc, acc);
+                }
+            }
+            if (this.digits[step] != 0) {
+                final BigInteger power = table[this.digits[step] >> 1];
+                acc = acc == null ? power : this.multiply(acc, power);
+            }
+        }
+        if (acc == null) {
+            return BigInteger.ONE.mod(this.modulus);
+        }
+        return this.reduce(acc);
+    }
+
+    private BigInteger toMontgomery(BigInteger a) {
+        return this.multiply(a, this.r2);
+    }
+
+    private BigInteger multiply(BigInteger a, BigInteger b) {
+        return this.reduce(a.multiply(b));
+    }
+
+    /**
+     * Montgomery约简：t * R^-1 mod n，t < n * R
+     */
+    private BigInteger reduce(BigInteger t) {
+        final BigInteger m = t.and(this.mask).multiply(this.nPrime).and(this.mask);
+        final BigInteger u = t.add(m.multiply(this.modulus)).shiftRight(this.k);
+        return u.compareTo(this.modulus) >= 0 ? u.subtract(this.modulus) : u;
+    }
+}
@@ -0,0 +1,99 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.bigInteger.BigInteger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 多素数RSA
+ * 公钥运算与分组方式同RSA，n由3或4个素数相乘而得
+ * 私钥运算走多素数CRT：k个幂运算的模数与指数都只有n的1/k长，
+ * 单个幂运算的开销约与长度的立方成正比，故总开销约为直接计算的k/k^3，比两素数CRT再省约一半，
+ * 且各幂运算相互独立，可分到多个线程上同时执行
+ */
+@SuppressWarnings("JavaDoc")
+public class MultiPrimeRSA extends AbstractRSA {
+
+    /**
+     * newInstance默认的模n的比特数与素数个数
+     */
+    public static final int DEFAULT_KEY_BITS = ASYMMETRIC_BIT * 3;
+    public static final int DEFAULT_PRIMES = 3;
+
+    private final MultiPrimeRSAKey key;
+
+    /**
+     * 各素数下的幂运算默认分到多个线程上执行
+     */
+    private MultiPrimeRSA(MultiPrimeRSAKey key) {
+        super(key.getN(), key.getE(), key.getD());
+        this.key = key;
+        this.parallelCrt = true;
+    }
+
+    /**
+     * 生成DEFAULT_KEY_BITS位、DEFAULT_PRIMES个素数的密钥构造新实例
+     *
+     * @return
+     */
+    public static MultiPrimeRSA newInstance() {
+        return newInstance(DEFAULT_KEY_BITS, DEFAULT_PRIMES);
+    }
+
+    /**
+     * 生成新密钥构造新实例
+     *
+     * @param keyBits 模n的比特数
+     * @param primes  素数个数，3或4
+     * @return
+     */
+    public static MultiPrimeRSA newInstance(int keyBits, int primes) {
+        return newInstance(new RSAKeyGenerator(keyBits).generateMultiPrime(primes));
+    }
+
+    /**
+     * 以给定密钥构造新实例
+     *
+     * @param key
+     * @return
+     */
+    public static MultiPrimeRSA newInstance(MultiPrimeRSAKey key) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        return new MultiPrimeRSA(key);
+    }
+
+    /**
+     * mi = c ^ di % ri，再按Garner算法合并
+     * 并行时除第一个外都交给ForkJoin公共池，不占用TaskUtil中正在执行分块任务的线程
+     *
+     * @param c
+     * @return
+     */
+    @Override
+    protected BigInteger getResultOfCRT(BigInteger c) {
+        final MultiPrimeRSAKey key = this.key;
+        final int count = key.getPrimeCount();
+        final BigInteger[] residues = new BigInteger[count];
+        if (this.parallelCrt) {
+            final List<ForkJoinTask<BigInteger>> tasks = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                final int idx = i;
+                tasks.add(ForkJoinPool.commonPool().submit(() -> c.modPow(key.getExponent(idx), key.getPrime(idx))));
+            }
+            residues[0] = c.modPow(key.getExponent(0), key.getPrime(0));
+            for (int i = 1; i < count; i++) {
+                residues[i] = tasks.get(i - 1).join();
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                residues[i] = c.modPow(key.getExponent(i), key.getPrime(i));
+            }
+        }
+        return key.combine(residues);
+    }
+}
@@ -0,0 +1,124 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.bigInteger.BigInteger;
+
+/**
+ * 多素数RSA密钥，n = r1 * r2 * ... * rk（k为3或4）
+ * 除公钥(e, n)与私钥d外保留各素数及CRT参数：
+ * di = d mod (ri - 1)，Ri = r1 * ... * r(i-1)，ti = Ri^-1 mod ri，
+ * 私钥运算拆成k个模数只有n的1/k长的幂运算，再按Garner算法合并
+ * 不可变，可被多个线程共享
+ */
+public final class MultiPrimeRSAKey {
+
+    public static final int MIN_PRIMES = 3;
+    public static final int MAX_PRIMES = 4;
+
+    private final BigInteger n;
+    private final BigInteger e;
+    private final BigInteger d;
+    private final BigInteger[] primes;
+    private final BigInteger[] exponents;
+    /**
+     * 第i项为前i个素数之积Ri与ti，第0项不用
+     */
+    private final BigInteger[] products;
+    private final BigInteger[] coefficients;
+
+    /**
+     * 由各素数与一对指数构造，CRT参数在此一次算好
+     *
+     * @param primes 互不相同的素数
+     * @param e
+     * @param d
+     */
+    public MultiPrimeRSAKey(BigInteger[] primes, BigInteger e, BigInteger d) {
+        if (primes == null || e == null || d == null) {
+            throw new NullPointerException("key component is null");
+        }
+        if (primes.length < MIN_PRIMES || primes.length > MAX_PRIMES) {
+            throw new IllegalArgumentException("素数个数须为" + MIN_PRIMES + "到" + MAX_PRIMES);
+        }
+        this.primes = primes.clone();
+        this.e = e;
+        this.d = d;
+        this.exponents = new BigInteger[primes.length];
+        this.products = new BigInteger[primes.length];
+        this.coefficients = new BigInteger[primes.length];
+        BigInteger product = BigInteger.ONE;
+        for (int i = 0; i < primes.length; i++) {
+            final BigInteger prime = this.primes[i];
+            if (prime == null) {
+                throw new NullPointerException("prime is null");
+            }
+            for (int j = 0; j < i; j++) {
+                if (prime.equals(this.primes[j])) {
+                    throw new IllegalArgumentException("素数不能相同");
+                }
+            }
+            this.exponents[i] = d.mod(prime.subtract(BigInteger.ONE));
+            if (i > 0) {
+                this.products[i] = product;
+                this.coefficients[i] = product.mod(prime).modInverse(prime);
+            }
+            product = product.multiply(prime);
+        }
+        this.n = product;
+    }
+
+    public BigInteger getN() {
+        return this.n;
+    }
+
+    public BigInteger getE() {
+        return this.e;
+    }
+
+    public BigInteger getD() {
+        return this.d;
+    }
+
+    public int getPrimeCount() {
+        return this.primes.length;
+    }
+
+    public BigInteger getPrime(int i) {
+        return this.primes[i];
+    }
+
+    /**
+     * d mod (ri - 1)
+     *
+     * @param i
+     * @return
+     */
+    public BigInteger getExponent(int i) {
+        return this.exponents[i];
+    }
+
+    /**
+     * 按Garner算法合并各素数下的余数：
+     * m = m1，对i >= 2：h = (mi - m) * ti mod ri，m = m + Ri * h
+     *
+     * @param residues 第i项为 c ^ di mod ri
+     * @return 模n下唯一的m
+     */
+    BigInteger combine(BigInteger[] residues) {
+        BigInteger m = residues[0];
+        for (int i = 1; i < this.primes.length; i++) {
+            final BigInteger h = residues[i].subtract(m).multiply(this.coefficients[i]).mod(this.primes[i]);
+            m = m.add(this.products[i].multiply(h));
+        }
+        return m;
+    }
+
+    /**
+     * 不输出私钥部分
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return "MultiPrimeRSAKey{bits=" + this.n.bitLength() + ", primes=" + this.primes.length + ", e=" + this.e + "}";
+    }
+}
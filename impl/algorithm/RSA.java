@@ -1,10 +1,15 @@
 package encryption.impl.algorithm;
 
-import encryption.impl.BlockPassword;
 import encryption.impl.bigInteger.BigInteger;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * RSA
@@ -16,7 +21,7 @@ import java.util.Stack;
  * 故焦点在于加密的关于数论的抗击
  */
 @SuppressWarnings("JavaDoc")
-public class RSA extends BlockPassword<BigInteger> {
+public class RSA extends AbstractRSA {
 
     /**
      * 二进制计算
@@ -26,20 +31,10 @@ public class RSA extends BlockPassword<BigInteger> {
     private static final int N_BIT_LENGTH_LOWER_BOUND = ASYMMETRIC_BIT;
 
 
-    private static final int MAX_TIMES_BOUND = 2;
     /**
-     * 较大素数的比特长度
+     * getInstance使用的模n的比特数
      */
-    private static final int BIT_LENGTH = N_BIT_LENGTH_LOWER_BOUND * (random.nextInt(MAX_TIMES_BOUND) + 2);
-    /**
-     * 小素数
-     */
-    private final int subBitLength = BIT_LENGTH / 2;
-
-    /**
-     * BigInteger包下的配置性变量定义
-     */
-    private int defaultCertainty = 100;
+    public static final int DEFAULT_KEY_BITS = N_BIT_LENGTH_LOWER_BOUND * 2;
 
     /*
       RSA 由三位作者的名字首字母组成的命名
@@ -77,86 +72,101 @@ public class RSA extends BlockPassword<BigInteger> {
      */
 
 
-    private final BigInteger n;
     private final BigInteger k;
 
-    private BigInteger e;
-    private BigInteger d;
-
     /**
-     * 首次生成密钥
+     * 保留p、q与CRT参数的完整密钥，私钥运算据此走中国剩余定理
      */
-    private RSA() {
-        super(BIT_LENGTH / 4);
-        //p , q必须要比明文长度大 ， 故subLength是明文可加密的最大长度
-        int randBitLength = this.subBitLength + new Random().nextInt(32);
-        //p , q为达到k与(e或d)互质的效果，最好不要分别生成
-        BigInteger p = this.randomPrimeNumber(randBitLength);
-        BigInteger q = this.randomPrimeNumber(randBitLength);
-
-        this.n = p.multiply(q);
-        this.k = this.eulerForPrimeNumber(p, q);
-
-        this.generateKeys();
-
-//        System.out.println("首次生成RSA密钥");
-    }
+    private final RSAKey key;
 
     /**
-     * 获取该次加密中n的bit数
-     *
-     * @return
+     * 按p、q缓存的Montgomery常数与私钥指数的窗口分解，所有分组共用
      */
-    @Override
-    protected int getBitLength() {
-        return this.n.bitLength();
-    }
+    private final MontgomeryPow powOfP;
+    private final MontgomeryPow powOfQ;
+    /**
+     * 首次私钥运算时实测缓存的引擎是否快于JDK的modPow，null表示尚未测量
+     */
+    private volatile Boolean montgomeryFaster;
+    private static final int CALIBRATE_ROUNDS = 3;
 
-    @Override
-    public BigInteger convertString(String text) {
-        if (text == null) {
-            throw new NullPointerException("text is null");
-        }
-        return BigInteger.valueOfString(text);
-    }
+    /**
+     * 以给定密钥构造，密钥由RSAKeyGenerator生成或从RSAKeyPool取得
+     */
+    private RSA(RSAKey key) {
+        super(key.getN(), key.getE(), key.getD());
+        this.k = this.eulerForPrimeNumber(key.getP(), key.getQ());
+        this.key = key;
+        this.powOfP = new MontgomeryPow(this.key.getP().bigIntegerValue(), this.key.getDP().bigIntegerValue());
+        this.powOfQ = new MontgomeryPow(this.key.getQ().bigIntegerValue(), this.key.getDQ().bigIntegerValue());
 
-    @Override
-    public String recoverString(BigInteger obj) {
-        if (obj == null) {
-            throw new NullPointerException("obj is null");
-        }
-        return obj.stringOfValue();
+//        System.out.println("首次生成RSA密钥");
     }
 
     private static RSA rsa;
 
-    public static RSA getInstance() {
+    public static synchronized RSA getInstance() {
         if (rsa == null) {
-            rsa = new RSA();
+            rsa = newInstance(DEFAULT_KEY_BITS);
         }
         return rsa;
     }
 
     /**
-     * 加密
+     * 从keyBits位密钥的共享池取一对密钥构造新实例，池中有现成密钥时不等待生成
      *
-     * @param msg
+     * @param keyBits
      * @return
      */
-    @Override
-    public BigInteger encrypt(BigInteger msg, BigInteger publicKey) {
-        return this.getResultOfModN(msg, publicKey);
+    public static RSA newInstance(int keyBits) {
+        return newInstance(RSAKeyPool.of(keyBits).take());
     }
 
     /**
-     * 解密
+     * 以密钥库中name对应的密钥构造新实例，启动时不必生成密钥，已有的密文仍可解密；
+     * 密钥库不存在或其中没有该名称时，从keyBits位的共享池取一对新密钥写入密钥库
      *
-     * @param pwd
+     * @param keyStore
+     * @param name
+     * @param keyBits
      * @return
+     * @throws IOException
      */
-    @Override
-    public BigInteger decrypt(BigInteger pwd, BigInteger privateKey) {
-        return this.getResultOfModN(pwd, privateKey);
+    public static RSA newInstance(Path keyStore, String name, int keyBits) throws IOException {
+        if (keyStore == null) {
+            throw new NullPointerException("keyStore is null");
+        }
+        if (name == null) {
+            throw new NullPointerException("name is null");
+        }
+        synchronized (RSAKeyStore.class) {
+            final Map<String, RSAKey> keys = new LinkedHashMap<>();
+            if (Files.exists(keyStore)) {
+                final RSAKeyStore store = RSAKeyStore.open(keyStore);
+                final RSAKey key = store.get(name);
+                if (key != null) {
+                    return newInstance(key);
+                }
+                keys.putAll(store.toMap());
+            }
+            final RSAKey key = RSAKeyPool.of(keyBits).take();
+            keys.put(name, key);
+            RSAKeyStore.write(keyStore, keys);
+            return newInstance(key);
+        }
+    }
+
+    /**
+     * 以给定密钥构造新实例
+     *
+     * @param key
+     * @return
+     */
+    public static RSA newInstance(RSAKey key) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        return new RSA(key);
     }
 
     /*
@@ -178,40 +188,70 @@ public class RSA extends BlockPassword<BigInteger> {
     // 19-4-25 加油！
 
     /**
-     * 计算公式 a = b ^ c % N
+     * 中国剩余定理计算 c ^ d % N：
+     * m1 = c ^ dP % p，m2 = c ^ dQ % q，h = qInv * (m1 - m2) % p，m = m2 + h * q
+     * 两次幂运算的模数与指数都只有一半长，总开销约为直接计算的1/4到1/3
+     * 并行时m1交给ForkJoin公共池，不占用TaskUtil中正在执行分块任务的线程，避免嵌套等待耗尽线程池
      *
-     * @param bigInteger
-     * @param key
+     * @param c
      * @return
      */
-    private BigInteger getResultOfModN(BigInteger bigInteger, BigInteger key) {
-        return bigInteger.modPow(key, this.n);
+    @Override
+    protected BigInteger getResultOfCRT(BigInteger c) {
+        final RSAKey key = this.key;
+        final boolean montgomery = this.isMontgomeryFaster();
+        final BigInteger m1;
+        final BigInteger m2;
+        if (this.parallelCrt) {
+            final ForkJoinTask<BigInteger> half = ForkJoinPool.commonPool().submit(
+                    () -> this.powOfHalf(c, this.powOfP, key.getDP(), key.getP(), montgomery));
+            m2 = this.powOfHalf(c, this.powOfQ, key.getDQ(), key.getQ(), montgomery);
+            m1 = half.join();
+        } else {
+            m1 = this.powOfHalf(c, this.powOfP, key.getDP(), key.getP(), montgomery);
+            m2 = this.powOfHalf(c, this.powOfQ, key.getDQ(), key.getQ(), montgomery);
+        }
+        final BigInteger h = key.getQInv().multiply(m1.subtract(m2)).mod(key.getP());
+        return m2.add(h.multiply(key.getQ()));
+    }
+
+    private BigInteger powOfHalf(BigInteger c, MontgomeryPow pow, BigInteger exponent, BigInteger modulus,
+                                 boolean montgomery) {
+        return montgomery ? new BigInteger(pow.pow(c.bigIntegerValue())) : c.modPow(exponent, modulus);
     }
 
     /**
-     * 生成随机素数 , 在源码中有说明 ： 返回值超过(1 - 1/2^100) = 99.99%的概率是素数 , 可认为是确定性算法
+     * 缓存的Montgomery引擎是否快于JDK的modPow
+     * JDK的modPow内部同样用Montgomery乘法且有平台内建实现，每次调用重新建立的约简状态相对幂运算本身开销很小，
+     * 而纯Java的约简每步要多做两次大数乘法，在有内建实现的JVM上通常慢2到4倍；
+     * 故首次私钥运算时以随机底数各测CALIBRATE_ROUNDS轮，取最好成绩比较，只在实测更快时才启用
      *
-     * @param bitLength
      * @return
      */
-    private BigInteger randomPrimeNumber(int bitLength) {
-        BigInteger bigInteger = BigInteger.probablePrime(bitLength, new Random());
-        return this.getInvalidBigInteger(bigInteger);
-    }
-
-    private BigInteger getInvalidBigInteger(BigInteger bigInteger) {
-        BigInteger res = bigInteger;
-        String bStr = res.toString();
-        char bVal = bStr.charAt(bStr.length() - 1);
-        /*
-          由于5为公钥，p-1 , q-1均不能为以0为末尾的大数
-         */
-        while (bVal == '1') {
-            res = res.nextProbablePrime();
-            bStr = res.toString();
-            bVal = bStr.charAt(bStr.length() - 1);
+    private boolean isMontgomeryFaster() {
+        Boolean faster = this.montgomeryFaster;
+        if (faster == null) {
+            synchronized (this) {
+                faster = this.montgomeryFaster;
+                if (faster == null) {
+                    final BigInteger sample = new BigInteger(this.key.getP().bitLength() - 1, new Random());
+                    long engineBest = Long.MAX_VALUE;
+                    long jdkBest = Long.MAX_VALUE;
+                    for (int i = 0; i < CALIBRATE_ROUNDS; i++) {
+                        final long t0 = System.nanoTime();
+                        this.powOfP.pow(sample.bigIntegerValue());
+                        final long t1 = System.nanoTime();
+                        sample.modPow(this.key.getDP(), this.key.getP());
+                        final long t2 = System.nanoTime();
+                        engineBest = Math.min(engineBest, t1 - t0);
+                        jdkBest = Math.min(jdkBest, t2 - t1);
+                    }
+                    faster = engineBest < jdkBest;
+                    this.montgomeryFaster = faster;
+                }
+            }
         }
-        return res;
+        return faster;
     }
 
     /**
@@ -237,49 +277,6 @@ public class RSA extends BlockPassword<BigInteger> {
         this.e = factor2;
     }
 
-    private void generateKeys() {
-        this.e = new BigInteger("5");
-        System.out.println(this.k);
-        final Stack<BigInteger> integerStack = this.euclid(this.e, this.k);
-        int size = integerStack.size();
-
-        //ed - kt = 1
-        BigInteger res = BigInteger.ONE;
-//        偶数 , t = ed - 1
-        if ((size & 0x00000001) == 0x0000000) {
-            integerStack.push(res);
-        }
-
-        BigInteger offset = BigInteger.ONE.negate();
-        BigInteger b, s = integerStack.pop();
-        while (!integerStack.empty()) {
-            b = integerStack.peek();
-            res = res.multiply(b).add(offset).divide(s);
-            s = integerStack.pop();
-            offset = offset.negate();
-        }
-        this.d = res;
-    }
-
-    /**
-     * @param divider
-     * @param dividend
-     * @return
-     */
-    private Stack<BigInteger> euclid(BigInteger divider, BigInteger dividend) {
-        final Stack<BigInteger> stack = new Stack<>();
-        stack.push(dividend);
-        stack.push(divider);
-        BigInteger remainder = dividend.remainder(divider);
-        while (remainder.compareTo(BigInteger.ONE) != 0) {
-            stack.push(remainder);
-            dividend = divider;
-            divider = remainder;
-            remainder = dividend.remainder(divider);
-        }
-        return stack;
-    }
-
     /**
      * 关于大素数积n的欧拉函数
      *
@@ -291,86 +288,6 @@ public class RSA extends BlockPassword<BigInteger> {
         return primePositive1.subtract(BigInteger.ONE).multiply(primePositive2.subtract(BigInteger.ONE));
     }
 
-    /**
-     * 获取公钥，对外提供接口
-     *
-     * @return
-     */
-    public String getPublicKeyOfN() {
-        return this.n.toString();
-    }
-
-    /**
-     * 获取公钥，对外提供接口
-     *
-     * @return
-     */
-    public String getPublicKeyOfE(String n) {
-        if (n == null) {
-            throw new NullPointerException("n is null");
-        }
-        if (!n.equals(this.n.toString())) {
-            return null;
-        }
-        return this.e.toString();
-    }
-
-    /**
-     * 获取私钥，对外只提供给服务器端
-     *
-     * @return
-     */
-    public String getPrivateKey(String e, String n) {
-        if (e == null) {
-            throw new NullPointerException("e is null");
-        }
-        if (n == null) {
-            throw new NullPointerException("n is null");
-        }
-        if (
-                !n.equals(this.n.toString())
-                        || !e.equals(this.e.toString())
-        ) {
-            return null;
-        }
-        return this.d.toString();
-    }
-
-    /*
-      须注意加解密都不用编码序列化的方法（如convertString , recoverString ， 即字符串<->整数的方法）
-      直接返回this.toString（即BigInteger.toString）,即都是数串<->整数
-     */
-
-    /**
-     * 对外加密接口（应用CBC版本）
-     *
-     * @param msg
-     * @param eStr
-     * @param nStr
-     * @return
-     */
-    public StringBuffer encrypt(StringBuffer msg, String eStr, String nStr) {
-        if (!this.n.toString().equals(nStr)) {
-            throw new IllegalArgumentException("提供的n与当前RSA的n不一致");
-        }
-        if (!this.e.toString().equals(eStr)) {
-            throw new IllegalArgumentException("提供的e与当前RSA的e不一样");
-        }
-        final BigInteger e = new BigInteger(eStr);
-        return this.encrypt_ECB_with_multiply_threads(msg, e);
-    }
-
-    /**
-     * 对外解密接口（应用CBC版本）
-     */
-    public StringBuffer decrypt(StringBuffer pwd, String dStr, String nStr) {
-        if (!this.n.toString().equals(nStr)) {
-            throw new IllegalArgumentException("提供的n与当前RSA的n不一致");
-        }
-        final BigInteger d = new BigInteger(dStr);
-        return this.decrypt_ECB_with_multiply_threads(pwd, d);
-    }
-
     public static void main(String[] a) {
         final RSA rsa = RSA.getInstance();
         final BigInteger encrypt = rsa.encrypt(new BigInteger("213234"), rsa.e);
@@ -0,0 +1,256 @@
+package encryption.impl.algorithm;
+
+import encryption.utils.TaskUtil;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * RSA + AES 数字信封，所有整数均为大端
+ * 格式：MAGIC(4) 包装密钥字符数(4) 包装密钥(每字符2字节) 初始化向量(AES分组字节数) 密文CRC32C(4) 密文
+ * 数据密钥为AdvancedEncrypt.KEY_CHARS个随机字符，后接随机非零字符填满一个RSA明文分组后用接收方公钥加密（包装），
+ * 使包装只需一次模幂，且明文数值接近模的大小；负载用数据密钥以CTR模式加密，密文与明文等长，
+ * 按CHUNK_SIZE分块，第i块的计数器从 i << 32 开始，多于一块时并行加密，负载不受RSA分组数上限约束
+ * 发送方按接收方的模n缓存当前会话（数据密钥、包装结果与AES实例），同一接收方的后续消息不再做RSA运算，
+ * 每个会话使用SESSION_USES次后换新；每条消息有自己的随机初始化向量，共用数据密钥时密钥流不重复
+ * 接收方按(n, 包装密钥)缓存解包得到的AES实例，同一会话的后续消息不再做私钥运算
+ * 两个缓存均按最近最少使用淘汰，线程安全
+ */
+public final class RSAEnvelope {
+
+    public static final int MAGIC = 0x45525631;
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 每个发送会话可封装的消息数
+     */
+    static final int SESSION_USES = 4096;
+    /**
+     * 发送方缓存的接收方数、接收方缓存的会话数
+     */
+    static final int SENDER_CACHE_CAPACITY = 64;
+    static final int RECEIVER_CACHE_CAPACITY = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Map<String, Session> SESSIONS = lruMap(SENDER_CACHE_CAPACITY);
+    private static final Map<String, AdvancedEncrypt> OPENED = lruMap(RECEIVER_CACHE_CAPACITY);
+
+    /**
+     * 发送会话
+     */
+    private static final class Session {
+        private final String wrappedKey;
+        private final AdvancedEncrypt cipher;
+        private int uses;
+
+        private Session(String wrappedKey, AdvancedEncrypt cipher) {
+            this.wrappedKey = wrappedKey;
+            this.cipher = cipher;
+        }
+    }
+
+    private RSAEnvelope() {
+
+    }
+
+    /**
+     * 以recipient的公钥封装payload
+     *
+     * @param recipient 接收方
+     * @param payload
+     * @return 信封
+     */
+    public static byte[] seal(RSA recipient, byte[] payload) {
+        if (recipient == null) {
+            throw new NullPointerException("recipient is null");
+        }
+        if (payload == null) {
+            throw new NullPointerException("payload is null");
+        }
+        final Session session = session(recipient);
+        final AdvancedEncrypt cipher = session.cipher;
+        final String wrappedKey = session.wrappedKey;
+        final byte[] iv = new byte[cipher.getBlockBytes()];
+        RANDOM.nextBytes(iv);
+
+        final int headerSize = headerSize(wrappedKey.length(), iv.length);
+        if ((long) headerSize + payload.length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("负载过大");
+        }
+        final byte[] res = new byte[headerSize + payload.length];
+        System.arraycopy(payload, 0, res, headerSize, payload.length);
+        crypt(cipher, iv, res, headerSize, payload.length);
+
+        final ByteBuffer header = ByteBuffer.wrap(res, 0, headerSize);
+        header.putInt(MAGIC).putInt(wrappedKey.length());
+        for (int i = 0; i < wrappedKey.length(); i++) {
+            header.putChar(wrappedKey.charAt(i));
+        }
+        header.put(iv).putInt(crc(res, headerSize, payload.length));
+        return res;
+    }
+
+    /**
+     * 以recipient的私钥打开信封
+     *
+     * @param recipient 接收方，须持有私钥
+     * @param envelope
+     * @return 负载
+     */
+    public static byte[] open(RSA recipient, byte[] envelope) {
+        if (recipient == null) {
+            throw new NullPointerException("recipient is null");
+        }
+        if (envelope == null) {
+            throw new NullPointerException("envelope is null");
+        }
+        final ByteBuffer header = ByteBuffer.wrap(envelope);
+        if (envelope.length < Integer.BYTES * 2 || header.getInt() != MAGIC) {
+            throw new IllegalArgumentException("不是RSA信封");
+        }
+        final int wrappedChars = header.getInt();
+        if (wrappedChars <= 0 || wrappedChars > (envelope.length - header.position()) / Character.BYTES) {
+            throw new IllegalArgumentException("信封已损坏");
+        }
+        final char[] chars = new char[wrappedChars];
+        header.asCharBuffer().get(chars);
+        header.position(header.position() + wrappedChars * Character.BYTES);
+        final AdvancedEncrypt cipher = unwrap(recipient, new String(chars));
+
+        final byte[] iv = new byte[cipher.getBlockBytes()];
+        if (header.remaining() < iv.length + Integer.BYTES) {
+            throw new IllegalArgumentException("信封已损坏");
+        }
+        header.get(iv);
+        final int crc = header.getInt();
+        final int off = header.position();
+        final int len = envelope.length - off;
+        if (crc(envelope, off, len) != crc) {
+            throw new IllegalArgumentException("信封校验失败");
+        }
+        final byte[] res = new byte[len];
+        System.arraycopy(envelope, off, res, 0, len);
+        crypt(cipher, iv, res, 0, len);
+        return res;
+    }
+
+    /**
+     * 清空发送与接收缓存，轮换密钥后调用
+     */
+    public static void clearCache() {
+        synchronized (SESSIONS) {
+            SESSIONS.clear();
+        }
+        synchronized (OPENED) {
+            OPENED.clear();
+        }
+    }
+
+    /**
+     * 取recipient的当前发送会话，不存在或已用满时生成并包装新的数据密钥（包装在锁外进行）
+     */
+    private static Session session(RSA recipient) {
+        final String n = recipient.getPublicKeyOfN();
+        synchronized (SESSIONS) {
+            final Session session = SESSIONS.get(n);
+            if (session != null && session.uses < SESSION_USES) {
+                session.uses++;
+                return session;
+            }
+        }
+        final String dataKey = randomChars(AdvancedEncrypt.KEY_CHARS, false);
+        final StringBuffer block = new StringBuffer(dataKey);
+        block.append(randomChars(recipient.getMessageLengthOfChars() - dataKey.length(), true));
+        final String wrappedKey = recipient.encrypt(block, recipient.getPublicKeyOfE(n), n).toString();
+        final Session session = new Session(wrappedKey, AdvancedEncrypt.newInstance(dataKey));
+        session.uses = 1;
+        synchronized (SESSIONS) {
+            SESSIONS.put(n, session);
+        }
+        synchronized (OPENED) {
+            OPENED.put(n + ':' + wrappedKey, session.cipher);
+        }
+        return session;
+    }
+
+    /**
+     * 解包数据密钥，命中缓存时不做私钥运算
+     */
+    private static AdvancedEncrypt unwrap(RSA recipient, String wrappedKey) {
+        final String n = recipient.getPublicKeyOfN();
+        //n为十进制数串，不含':'，拼接后不会与其它(n, 包装密钥)重合
+        final String cacheKey = n + ':' + wrappedKey;
+        synchronized (OPENED) {
+            final AdvancedEncrypt cipher = OPENED.get(cacheKey);
+            if (cipher != null) {
+                return cipher;
+            }
+        }
+        final String e = recipient.getPublicKeyOfE(n);
+        final String d = recipient.getPrivateKey(e, n);
+        if (d == null) {
+            throw new IllegalArgumentException("接收方没有私钥");
+        }
+        final StringBuffer block = recipient.decrypt(new StringBuffer(wrappedKey), d, n);
+        if (block.length() < AdvancedEncrypt.KEY_CHARS) {
+            throw new IllegalArgumentException("数据密钥解包失败");
+        }
+        final AdvancedEncrypt cipher = AdvancedEncrypt.newInstance(block.substring(0, AdvancedEncrypt.KEY_CHARS));
+        synchronized (OPENED) {
+            OPENED.put(cacheKey, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * CTR加解密bytes[off, off + len)，多于一块时并行
+     */
+    private static void crypt(AdvancedEncrypt cipher, byte[] iv, byte[] bytes, int off, int len) {
+        final int chunks = (len + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunks <= 1) {
+            cipher.crypt_CTR(iv, 0, bytes, off, len);
+            return;
+        }
+        TaskUtil.invokeBlocks(chunks, 1, idx -> {
+            final int sp = idx * CHUNK_SIZE;
+            cipher.crypt_CTR(iv, (long) idx << Integer.SIZE, bytes, off + sp, Math.min(CHUNK_SIZE, len - sp));
+            return "";
+        });
+    }
+
+    /**
+     * @param count
+     * @param nonZero 为true时不取0字符，用于填充（解密时末尾的0字符会被当作补位去掉）
+     * @return
+     */
+    private static String randomChars(int count, boolean nonZero) {
+        final char[] chars = new char[count];
+        for (int i = 0; i < count; i++) {
+            chars[i] = nonZero ? (char) (RANDOM.nextInt(Character.MAX_VALUE) + 1) : (char) RANDOM.nextInt(Character.MAX_VALUE + 1);
+        }
+        return new String(chars);
+    }
+
+    private static int headerSize(int wrappedChars, int blockBytes) {
+        return Integer.BYTES * 2 + wrappedChars * Character.BYTES + blockBytes + Integer.BYTES;
+    }
+
+    private static int crc(byte[] bytes, int off, int len) {
+        final CRC32C crc32C = new CRC32C();
+        crc32C.update(bytes, off, len);
+        return (int) crc32C.getValue();
+    }
+
+    private static <V> Map<String, V> lruMap(int capacity) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+}
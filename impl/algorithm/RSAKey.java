@@ -0,0 +1,110 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.bigInteger.BigInteger;
+
+/**
+ * RSA密钥
+ * 除公钥(e, n)与私钥d外保留p、q及中国剩余定理（CRT）所需的
+ * dP = d mod (p - 1)，dQ = d mod (q - 1)，qInv = q^-1 mod p，
+ * 私钥运算可拆成两个模数减半的幂运算
+ * 不可变，可被多个线程共享
+ */
+public final class RSAKey {
+
+    private final BigInteger n;
+    private final BigInteger e;
+    private final BigInteger d;
+    private final BigInteger p;
+    private final BigInteger q;
+    private final BigInteger dP;
+    private final BigInteger dQ;
+    private final BigInteger qInv;
+
+    /**
+     * 由两个素数与一对指数构造，CRT参数在此一次算好
+     *
+     * @param p
+     * @param q
+     * @param e
+     * @param d
+     */
+    public RSAKey(BigInteger p, BigInteger q, BigInteger e, BigInteger d) {
+        if (p == null || q == null || e == null || d == null) {
+            throw new NullPointerException("key component is null");
+        }
+        if (p.equals(q)) {
+            throw new IllegalArgumentException("p与q不能相同");
+        }
+        this.p = p;
+        this.q = q;
+        this.e = e;
+        this.d = d;
+        this.n = p.multiply(q);
+        this.dP = d.mod(p.subtract(BigInteger.ONE));
+        this.dQ = d.mod(q.subtract(BigInteger.ONE));
+        this.qInv = q.modInverse(p);
+    }
+
+    /**
+     * 由全部分量构造，用于从密钥库载入：CRT参数直接使用，不再重算
+     */
+    RSAKey(BigInteger n, BigInteger e, BigInteger d, BigInteger p, BigInteger q,
+           BigInteger dP, BigInteger dQ, BigInteger qInv) {
+        if (n == null || e == null || d == null || p == null || q == null || dP == null || dQ == null || qInv == null) {
+            throw new NullPointerException("key component is null");
+        }
+        if (p.equals(q) || !n.equals(p.multiply(q))) {
+            throw new IllegalArgumentException("密钥分量不一致");
+        }
+        this.n = n;
+        this.e = e;
+        this.d = d;
+        this.p = p;
+        this.q = q;
+        this.dP = dP;
+        this.dQ = dQ;
+        this.qInv = qInv;
+    }
+
+    public BigInteger getN() {
+        return this.n;
+    }
+
+    public BigInteger getE() {
+        return this.e;
+    }
+
+    public BigInteger getD() {
+        return this.d;
+    }
+
+    public BigInteger getP() {
+        return this.p;
+    }
+
+    public BigInteger getQ() {
+        return this.q;
+    }
+
+    public BigInteger getDP() {
+        return this.dP;
+    }
+
+    public BigInteger getDQ() {
+        return this.dQ;
+    }
+
+    public BigInteger getQInv() {
+        return this.qInv;
+    }
+
+    /**
+     * 不输出私钥部分
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return "RSAKey{bits=" + this.n.bitLength() + ", e=" + this.e + "}";
+    }
+}
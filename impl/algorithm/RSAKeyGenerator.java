@@ -0,0 +1,206 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.bigInteger.BigInteger;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * RSA密钥生成
+ * p、q同时搜索：p交给ForkJoin公共池，q在调用线程上，耗时约为单个素数的搜索时间
+ * 多素数密钥的各素数同样同时搜索，素数越短搜索越快，总开销随素数个数增加而下降
+ * 每个素数的搜索：取随机奇数为起点，先用小素数筛掉其后SEARCH_WINDOW范围内的合数，
+ * 只对幸存的候选做(p - 1)与e互质的检查和Miller-Rabin测试，不再逐个格式化成十进制串判断
+ * 线程安全
+ */
+public final class RSAKeyGenerator {
+
+    /**
+     * 默认公钥指数，与原先固定取5一致
+     */
+    public static final int DEFAULT_E = 5;
+
+    private static final int MIN_KEY_BITS = 512;
+    /**
+     * 多素数密钥中每个素数的最小比特数
+     */
+    private static final int MIN_PRIME_BITS = 512;
+    private static final int CERTAINTY = 100;
+    /**
+     * 每个起点之后筛选的奇数个数
+     */
+    private static final int SEARCH_WINDOW = 4096;
+    /**
+     * 筛选用的奇素数（小于SIEVE_BOUND）
+     */
+    private static final int SIEVE_BOUND = 2048;
+    private static final int[] SMALL_PRIMES = smallPrimes(SIEVE_BOUND);
+
+    private final int keyBits;
+    private final java.math.BigInteger e;
+    private final Random random = new SecureRandom();
+
+    public RSAKeyGenerator(int keyBits) {
+        this(keyBits, DEFAULT_E);
+    }
+
+    /**
+     * @param keyBits 模n的比特数
+     * @param e       公钥指数，大于1的奇数
+     */
+    public RSAKeyGenerator(int keyBits, int e) {
+        if (keyBits < MIN_KEY_BITS) {
+            throw new IllegalArgumentException("密钥长度不能小于" + MIN_KEY_BITS);
+        }
+        if (e <= 1 || (e & 1) == 0) {
+            throw new IllegalArgumentException("e须为大于1的奇数");
+        }
+        this.keyBits = keyBits;
+        this.e = java.math.BigInteger.valueOf(e);
+    }
+
+    public int getKeyBits() {
+        return this.keyBits;
+    }
+
+    /**
+     * 生成一对密钥，n恰为keyBits位
+     *
+     * @return
+     */
+    public RSAKey generate() {
+        final int pBits = (this.keyBits + 1) / 2;
+        final int qBits = this.keyBits - pBits;
+        while (true) {
+            final ForkJoinTask<java.math.BigInteger> pTask = ForkJoinPool.commonPool().submit(() -> this.searchPrime(pBits, 2));
+            final java.math.BigInteger q = this.searchPrime(qBits, 2);
+            final java.math.BigInteger p = pTask.join();
+            if (p.equals(q)) {
+                continue;
+            }
+            final java.math.BigInteger phi = p.subtract(java.math.BigInteger.ONE).multiply(q.subtract(java.math.BigInteger.ONE));
+            final java.math.BigInteger d = this.e.modInverse(phi);
+            return new RSAKey(new BigInteger(p), new BigInteger(q), new BigInteger(this.e), new BigInteger(d));
+        }
+    }
+
+    /**
+     * 生成primes个素数的多素数密钥，n恰为keyBits位
+     * 前primes - 1个素数交给ForkJoin公共池，最后一个在调用线程上搜索
+     *
+     * @param primes 素数个数，3或4
+     * @return
+     */
+    public MultiPrimeRSAKey generateMultiPrime(int primes) {
+        if (primes < MultiPrimeRSAKey.MIN_PRIMES || primes > MultiPrimeRSAKey.MAX_PRIMES) {
+            throw new IllegalArgumentException("素数个数须为" + MultiPrimeRSAKey.MIN_PRIMES + "到" + MultiPrimeRSAKey.MAX_PRIMES);
+        }
+        if (this.keyBits / primes < MIN_PRIME_BITS) {
+            throw new IllegalArgumentException("密钥长度不足以分成" + primes + "个素数");
+        }
+        final int[] bits = new int[primes];
+        for (int i = 0; i < primes; i++) {
+            bits[i] = this.keyBits / primes + (i < this.keyBits % primes ? 1 : 0);
+        }
+        while (true) {
+            final List<ForkJoinTask<java.math.BigInteger>> tasks = new ArrayList<>(primes - 1);
+            for (int i = 0; i < primes - 1; i++) {
+                final int primeBits = bits[i];
+                tasks.add(ForkJoinPool.commonPool().submit(() -> this.searchPrime(primeBits, 3)));
+            }
+            final java.math.BigInteger last = this.searchPrime(bits[primes - 1], 3);
+            final Set<java.math.BigInteger> found = new LinkedHashSet<>();
+            for (ForkJoinTask<java.math.BigInteger> task : tasks) {
+                found.add(task.join());
+            }
+            found.add(last);
+            if (found.size() != primes) {
+                continue;
+            }
+            final BigInteger[] res = new BigInteger[primes];
+            java.math.BigInteger phi = java.math.BigInteger.ONE;
+            int i = 0;
+            for (java.math.BigInteger prime : found) {
+                phi = phi.multiply(prime.subtract(java.math.BigInteger.ONE));
+                res[i++] = new BigInteger(prime);
+            }
+            final java.math.BigInteger d = this.e.modInverse(phi);
+            return new MultiPrimeRSAKey(res, new BigInteger(this.e), new BigInteger(d));
+        }
+    }
+
+    /**
+     * 搜索bits位的素数，(p - 1)与e互质
+     * 最高topBits位置1：两个素数时置两位、三四个素数时置三位（1.75^4 > 2^3），使各素数之积恰为位数之和
+     *
+     * @param bits
+     * @param topBits
+     * @return
+     */
+    private java.math.BigInteger searchPrime(int bits, int topBits) {
+        while (true) {
+            java.math.BigInteger base = new java.math.BigInteger(bits, this.random).setBit(0);
+            for (int i = 1; i <= topBits; i++) {
+                base = base.setBit(bits - i);
+            }
+            final BitSet composite = sieve(base);
+            for (int j = composite.nextClearBit(0); j < SEARCH_WINDOW; j = composite.nextClearBit(j + 1)) {
+                final java.math.BigInteger candidate = base.add(java.math.BigInteger.valueOf(2L * j));
+                if (candidate.bitLength() != bits) {
+                    break;
+                }
+                if (candidate.subtract(java.math.BigInteger.ONE).gcd(this.e).equals(java.math.BigInteger.ONE)
+                        && candidate.isProbablePrime(CERTAINTY)) {
+                    return candidate;
+                }
+            }
+        }
+    }
+
+    /**
+     * 标记base + 2j（0 <= j < SEARCH_WINDOW）中能被小素数整除的j
+     *
+     * @param base 奇数
+     * @return
+     */
+    private static BitSet sieve(java.math.BigInteger base) {
+        final BitSet composite = new BitSet(SEARCH_WINDOW);
+        for (int prime : SMALL_PRIMES) {
+            final int r = base.mod(java.math.BigInteger.valueOf(prime)).intValue();
+            //base + 2j ≡ 0 (mod prime) => j ≡ -r * 2^-1 (mod prime)
+            int j = (int) ((long) (prime - r) % prime * ((prime + 1) / 2) % prime);
+            for (; j < SEARCH_WINDOW; j += prime) {
+                composite.set(j);
+            }
+        }
+        return composite;
+    }
+
+    private static int[] smallPrimes(int bound) {
+        final BitSet notPrime = new BitSet(bound);
+        int count = 0;
+        for (int i = 3; i < bound; i += 2) {
+            if (!notPrime.get(i)) {
+                count++;
+                for (int k = i * i; k < bound; k += 2 * i) {
+                    notPrime.set(k);
+                }
+            }
+        }
+        final int[] primes = new int[count];
+        int idx = 0;
+        for (int i = 3; i < bound; i += 2) {
+            if (!notPrime.get(i)) {
+                primes[idx++] = i;
+            }
+        }
+        return primes;
+    }
+}
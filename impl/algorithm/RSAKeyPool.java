@@ -0,0 +1,90 @@
+package encryption.impl.algorithm;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预先生成的RSA密钥池
+ * 后台守护线程不断生成密钥直到池满，取走一对就补一对；
+ * 池中有现成的密钥时take立即返回，池空时（如刚启动）在调用线程上直接生成，不等后台线程
+ */
+public final class RSAKeyPool {
+
+    public static final int DEFAULT_CAPACITY = 2;
+
+    /**
+     * 按密钥长度共享的默认池
+     */
+    private static final Map<Integer, RSAKeyPool> POOLS = new ConcurrentHashMap<>();
+
+    private final RSAKeyGenerator generator;
+    private final BlockingQueue<RSAKey> ready;
+    private final Thread filler;
+
+    /**
+     * @param generator
+     * @param capacity  最多预先生成的密钥数
+     */
+    public RSAKeyPool(RSAKeyGenerator generator, int capacity) {
+        if (generator == null) {
+            throw new NullPointerException("generator is null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.generator = generator;
+        this.ready = new ArrayBlockingQueue<>(capacity);
+        this.filler = new Thread(this::fill, "rsa-key-pool-" + generator.getKeyBits());
+        this.filler.setDaemon(true);
+        this.filler.start();
+    }
+
+    /**
+     * keyBits位密钥的共享池，首次调用时创建并开始在后台生成
+     *
+     * @param keyBits
+     * @return
+     */
+    public static RSAKeyPool of(int keyBits) {
+        return POOLS.computeIfAbsent(keyBits, bits -> new RSAKeyPool(new RSAKeyGenerator(bits), DEFAULT_CAPACITY));
+    }
+
+    /**
+     * 取一对密钥，池空时在调用线程上生成
+     *
+     * @return
+     */
+    public RSAKey take() {
+        final RSAKey key = this.ready.poll();
+        return key != null ? key : this.generator.generate();
+    }
+
+    /**
+     * 池中现成的密钥数
+     *
+     * @return
+     */
+    public int available() {
+        return this.ready.size();
+    }
+
+    /**
+     * 停止后台生成，共享池关闭后下次of会重新创建
+     */
+    public void close() {
+        this.filler.interrupt();
+        POOLS.remove(this.generator.getKeyBits(), this);
+    }
+
+    private void fill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                this.ready.put(this.generator.generate());
+            }
+        } catch (InterruptedException e) {
+            //已关闭
+        }
+    }
+}
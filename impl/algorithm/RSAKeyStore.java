@@ -0,0 +1,296 @@
+package encryption.impl.algorithm;
+
+import encryption.impl.bigInteger.BigInteger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * 二进制RSA密钥库，可存放多个具名密钥，所有整数均为大端
+ * 头部：MAGIC(4) 密钥数(4)
+ * 目录：每个密钥一项，名称长度(2) 名称(UTF-8) 记录偏移(8) 记录长度(4) 记录CRC32C(4)
+ * 记录：n e d p q dP dQ qInv 依次存放，每个分量为 长度(4) 无符号数值
+ * 打开时把整个文件映射到内存并只解析目录，某个密钥第一次被取用时才校验并解析其记录，
+ * 载入时直接使用存储的CRT参数，不再生成或重算
+ * 打开后不可变，可被多个线程共享
+ */
+public final class RSAKeyStore {
+
+    public static final int MAGIC = 0x454B5331;
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int COMPONENTS = 8;
+
+    private final ByteBuffer buffer;
+    /**
+     * 名称到记录位置，按写入顺序
+     */
+    private final Map<String, Entry> entries;
+    /**
+     * 已解析的密钥
+     */
+    private final Map<String, RSAKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * 目录项
+     */
+    private static final class Entry {
+        private final int offset;
+        private final int length;
+        private final int crc;
+
+        private Entry(int offset, int length, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+
+    private RSAKeyStore(ByteBuffer buffer, Map<String, Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * 映射密钥库文件并解析目录
+     *
+     * @param file
+     * @return
+     * @throws IOException 文件不存在或目录已损坏
+     */
+    public static RSAKeyStore open(Path file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("密钥库文件过大");
+            }
+            //映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("不是RSA密钥库：" + file);
+            }
+            final int count = buffer.getInt(Integer.BYTES);
+            if (count < 0) {
+                throw new IOException("密钥库目录已损坏");
+            }
+            final Map<String, Entry> entries = new LinkedHashMap<>();
+            int position = HEADER_SIZE;
+            for (int i = 0; i < count; i++) {
+                final int nameLength = Short.toUnsignedInt(buffer.getShort(position));
+                final byte[] name = new byte[nameLength];
+                buffer.get(position + Short.BYTES, name);
+                position += Short.BYTES + nameLength;
+                final long offset = buffer.getLong(position);
+                final int length = buffer.getInt(position + Long.BYTES);
+                final int crc = buffer.getInt(position + Long.BYTES + Integer.BYTES);
+                position += Long.BYTES + Integer.BYTES + Integer.BYTES;
+                if (offset < position || length < 0 || offset + length > buffer.capacity()) {
+                    throw new IOException("密钥库目录已损坏");
+                }
+                entries.put(new String(name, StandardCharsets.UTF_8), new Entry((int) offset, length, crc));
+            }
+            return new RSAKeyStore(buffer, Collections.unmodifiableMap(entries));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("密钥库目录已损坏", e);
+        }
+    }
+
+    /**
+     * 写出密钥库（覆盖），先写临时文件再原子替换
+     *
+     * @param file
+     * @param keys 名称到密钥，按迭代顺序写入
+     * @throws IOException
+     */
+    public static void write(Path file, Map<String, RSAKey> keys) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        if (keys == null) {
+            throw new NullPointerException("keys is null");
+        }
+        final List<byte[]> names = new ArrayList<>(keys.size());
+        final List<byte[]> records = new ArrayList<>(keys.size());
+        int directorySize = 0;
+        for (Map.Entry<String, RSAKey> item : keys.entrySet()) {
+            if (item.getKey() == null || item.getValue() == null) {
+                throw new NullPointerException("key name or key is null");
+            }
+            final byte[] name = item.getKey().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xffff) {
+                throw new IllegalArgumentException("密钥名称过长");
+            }
+            names.add(name);
+            records.add(encode(item.getValue()));
+            directorySize += Short.BYTES + name.length + Long.BYTES + Integer.BYTES + Integer.BYTES;
+        }
+        long size = HEADER_SIZE + directorySize;
+        for (byte[] record : records) {
+            size += record.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("密钥库过大");
+        }
+        final ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(records.size());
+        int offset = HEADER_SIZE + directorySize;
+        for (int i = 0; i < names.size(); i++) {
+            final byte[] record = records.get(i);
+            out.putShort((short) names.get(i).length).put(names.get(i));
+            out.putLong(offset).putInt(record.length).putInt(crc(record, 0, record.length));
+            offset += record.length;
+        }
+        for (byte[] record : records) {
+            out.put(record);
+        }
+        out.flip();
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        //含私钥，临时文件在写入前即只允许属主读写；先删去残留的临时文件，新建时权限才会生效
+        Files.deleteIfExists(temp);
+        final FileAttribute<?>[] attributes = temp.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        try (FileChannel channel = FileChannel.open(temp, EnumSet.of(StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE), attributes)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 密钥名称，按写入顺序
+     *
+     * @return
+     */
+    public Set<String> names() {
+        return this.entries.keySet();
+    }
+
+    public boolean contains(String name) {
+        return this.entries.containsKey(name);
+    }
+
+    /**
+     * 取name对应的密钥，第一次取用时校验并解析
+     *
+     * @param name
+     * @return 不存在时返回null
+     * @throws IOException 记录已损坏
+     */
+    public RSAKey get(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name is null");
+        }
+        RSAKey key = this.keys.get(name);
+        if (key == null) {
+            final Entry entry = this.entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+            key = this.parse(name, entry);
+            this.keys.putIfAbsent(name, key);
+        }
+        return key;
+    }
+
+    /**
+     * 全部密钥，用于追加新密钥后重写密钥库
+     *
+     * @return
+     * @throws IOException
+     */
+    public Map<String, RSAKey> toMap() throws IOException {
+        final Map<String, RSAKey> res = new LinkedHashMap<>();
+        for (String name : this.entries.keySet()) {
+            res.put(name, this.get(name));
+        }
+        return res;
+    }
+
+    private RSAKey parse(String name, Entry entry) throws IOException {
+        final byte[] record = new byte[entry.length];
+        this.buffer.get(entry.offset, record);
+        if (crc(record, 0, record.length) != entry.crc) {
+            throw new IOException("密钥记录校验失败：" + name);
+        }
+        final BigInteger[] components = new BigInteger[COMPONENTS];
+        int position = 0;
+        try {
+            for (int i = 0; i < COMPONENTS; i++) {
+                final int length = ByteBuffer.wrap(record, position, Integer.BYTES).getInt();
+                position += Integer.BYTES;
+                if (length < 0 || length > record.length - position) {
+                    throw new IOException("密钥记录已损坏：" + name);
+                }
+                components[i] = new BigInteger(new java.math.BigInteger(1, record, position, length));
+                position += length;
+            }
+            return new RSAKey(components[0], components[1], components[2], components[3], components[4],
+                    components[5], components[6], components[7]);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("密钥记录已损坏：" + name, e);
+        }
+    }
+
+    private static byte[] encode(RSAKey key) {
+        final BigInteger[] components = {
+                key.getN(), key.getE(), key.getD(), key.getP(), key.getQ(), key.getDP(), key.getDQ(), key.getQInv()
+        };
+        final byte[][] magnitudes = new byte[COMPONENTS][];
+        int size = 0;
+        for (int i = 0; i < COMPONENTS; i++) {
+            magnitudes[i] = magnitude(components[i].bigIntegerValue());
+            size += Integer.BYTES + magnitudes[i].length;
+        }
+        final ByteBuffer record = ByteBuffer.allocate(size);
+        for (byte[] magnitude : magnitudes) {
+            record.putInt(magnitude.length).put(magnitude);
+        }
+        return record.array();
+    }
+
+    /**
+     * 去掉toByteArray的符号位前导0字节
+     */
+    private static byte[] magnitude(java.math.BigInteger value) {
+        final byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            final byte[] res = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, res, 0, res.length);
+            return res;
+        }
+        return bytes;
+    }
+
+    private static int crc(byte[] bytes, int off, int len) {
+        final CRC32C crc32C = new CRC32C();
+        crc32C.update(bytes, off, len);
+        return (int) crc32C.getValue();
+    }
+}
@@ -0,0 +1,267 @@
+package encryption.impl.batchUtils;
+
+import encryption.impl.GroupCipher;
+import encryption.impl.GroupMode;
+import encryption.impl.GroupPassword;
+import encryption.impl.streamUtils.CipherCodec;
+import encryption.impl.streamUtils.CipherOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 目录批量加解密
+ * 遍历源目录树，每个文件按GroupPassword的任意模式加密（或解密）后写到目标目录的对应位置，密文格式同CipherOutputStream
+ * 1.文件在工作窃取线程池（ForkJoinPool）上并行处理，大小悬殊的文件也能均衡分配到各线程
+ * 2.全局字节预算：整读的小文件按其大小的若干倍、流式处理的大文件按流缓冲大小占用预算，
+ * 预算不足时等待，故同时驻留内存的数据量有上界，与目录大小无关
+ * 3.不小于largeFileSize的文件流式处理，较小的文件按batchSize打包成一个任务，减少调度开销
+ * 单个文件失败不影响其他文件，失败记录在返回的Report中
+ */
+public class DirectoryCipher {
+
+    public static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+    public static final long DEFAULT_LARGE_FILE_SIZE = 4L * 1024 * 1024;
+    public static final long DEFAULT_BATCH_SIZE = 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    /**
+     * 小文件整读整写时同时驻留的副本数（以文件大小计）：读入的字节、组成字符的StringBuilder及其String、
+     * 加密器暂存与输出的字符串、输出字节及拼接初始化向量后的副本
+     */
+    private static final int WHOLE_FILE_COPIES = 6;
+
+    private final GroupPassword<?> groupPassword;
+    private final GroupMode mode;
+    private final boolean encrypt;
+    private final int parallelism;
+    private final long largeFileSize;
+    private final long batchSize;
+
+    /**
+     * 字节预算，以字节为许可
+     */
+    private final Semaphore budget;
+    private final int budgetBytes;
+
+    /**
+     * 一次批处理的结果
+     */
+    public static final class Report {
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final Map<Path, Exception> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        /**
+         * 成功处理的文件数
+         *
+         * @return
+         */
+        public long getFiles() {
+            return this.files.get();
+        }
+
+        /**
+         * 成功处理的输入字节数
+         *
+         * @return
+         */
+        public long getBytes() {
+            return this.bytes.get();
+        }
+
+        public Map<Path, Exception> getFailures() {
+            return this.failures;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{files=" + this.getFiles() + ", bytes=" + this.getBytes() + ", failures=" + this.failures.size() + "}";
+        }
+    }
+
+    public DirectoryCipher(GroupPassword<?> groupPassword, GroupMode mode, boolean encrypt) {
+        this(groupPassword, mode, encrypt, Runtime.getRuntime().availableProcessors(),
+                DEFAULT_BYTE_BUDGET, DEFAULT_LARGE_FILE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param groupPassword
+     * @param mode
+     * @param encrypt       true加密，false解密
+     * @param parallelism   工作线程数
+     * @param byteBudget    同时驻留内存的字节数上限，不超过Integer.MAX_VALUE
+     * @param largeFileSize 不小于该值的文件流式处理
+     * @param batchSize     小文件打包的累计字节数
+     */
+    public DirectoryCipher(GroupPassword<?> groupPassword, GroupMode mode, boolean encrypt, int parallelism,
+                           long byteBudget, long largeFileSize, long batchSize) {
+        if (groupPassword == null) {
+            throw new NullPointerException("groupPassword is null");
+        }
+        if (mode == null) {
+            throw new NullPointerException("mode is null");
+        }
+        if (parallelism <= 0 || largeFileSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("参数不合法");
+        }
+        if (byteBudget < STREAM_BUFFER_SIZE * 2 || byteBudget > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("byteBudget须在[" + STREAM_BUFFER_SIZE * 2 + ", Integer.MAX_VALUE]内");
+        }
+        this.groupPassword = groupPassword;
+        this.mode = mode;
+        this.encrypt = encrypt;
+        this.parallelism = parallelism;
+        this.largeFileSize = largeFileSize;
+        this.batchSize = batchSize;
+        this.budgetBytes = (int) byteBudget;
+        this.budget = new Semaphore(this.budgetBytes, true);
+    }
+
+    /**
+     * 处理srcRoot下的所有普通文件，输出到dstRoot下的相同相对路径
+     *
+     * @param srcRoot
+     * @param dstRoot 不能位于srcRoot之内
+     * @return
+     * @throws IOException 遍历目录失败
+     */
+    public Report run(Path srcRoot, Path dstRoot) throws IOException {
+        if (srcRoot == null) {
+            throw new NullPointerException("srcRoot is null");
+        }
+        if (dstRoot == null) {
+            throw new NullPointerException("dstRoot is null");
+        }
+        final Path src = srcRoot.toAbsolutePath().normalize();
+        final Path dst = dstRoot.toAbsolutePath().normalize();
+        if (dst.startsWith(src)) {
+            throw new IllegalArgumentException("目标目录不能位于源目录之内");
+        }
+        final List<Path> files;
+        try (Stream<Path> walk = Files.walk(src)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        final Report report = new Report();
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        List<Path> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (Path file : files) {
+            final long size = Files.size(file);
+            if (size >= this.largeFileSize) {
+                tasks.add(ForkJoinTask.adapt(() -> this.stream(file, src, dst, size, report)));
+                continue;
+            }
+            batch.add(file);
+            batchBytes += size;
+            if (batchBytes >= this.batchSize) {
+                final List<Path> unit = batch;
+                tasks.add(ForkJoinTask.adapt(() -> this.whole(unit, src, dst, report)));
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            final List<Path> unit = batch;
+            tasks.add(ForkJoinTask.adapt(() -> this.whole(unit, src, dst, report)));
+        }
+        final ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        } finally {
+            pool.shutdown();
+        }
+        return report;
+    }
+
+    /**
+     * 小文件整读整写，占用的预算为处理过程中同时驻留的各副本之和
+     */
+    private void whole(List<Path> files, Path srcRoot, Path dstRoot, Report report) {
+        for (Path file : files) {
+            int permits = 0;
+            try {
+                final long size = Files.size(file);
+                final int needed = (int) Math.min(this.budgetBytes, size * WHOLE_FILE_COPIES + 2);
+                this.budget.acquire(needed);
+                //acquire被中断时未取得许可，不能在finally中归还
+                permits = needed;
+                final byte[] bytes = Files.readAllBytes(file);
+                final CipherCodec codec = new CipherCodec(this.newCipher());
+                final byte[] head = codec.update(bytes, 0, bytes.length);
+                final byte[] tail = codec.doFinal();
+                final Path target = this.target(file, srcRoot, dstRoot);
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    out.write(head);
+                    out.write(tail);
+                }
+                report.files.incrementAndGet();
+                report.bytes.addAndGet(bytes.length);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                report.failures.put(file, e);
+                return;
+            } catch (IOException | RuntimeException e) {
+                report.failures.put(file, e);
+            } finally {
+                this.budget.release(permits);
+            }
+        }
+    }
+
+    /**
+     * 大文件流式处理，占用的预算为读写两个流缓冲
+     */
+    private void stream(Path file, Path srcRoot, Path dstRoot, long size, Report report) {
+        final int permits = STREAM_BUFFER_SIZE * 2;
+        try {
+            this.budget.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.failures.put(file, e);
+            return;
+        }
+        try {
+            final Path target = this.target(file, srcRoot, dstRoot);
+            try (
+                    InputStream in = Files.newInputStream(file);
+                    OutputStream out = new CipherOutputStream(Files.newOutputStream(target), this.newCipher())
+            ) {
+                final byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            report.files.incrementAndGet();
+            report.bytes.addAndGet(size);
+        } catch (IOException | RuntimeException e) {
+            report.failures.put(file, e);
+        } finally {
+            this.budget.release(permits);
+        }
+    }
+
+    private GroupCipher<?> newCipher() {
+        return this.encrypt ? this.groupPassword.newEncryptor(this.mode) : this.groupPassword.newDecryptor(this.mode);
+    }
+
+    private Path target(Path file, Path srcRoot, Path dstRoot) throws IOException {
+        final Path target = dstRoot.resolve(srcRoot.relativize(file).toString());
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+}
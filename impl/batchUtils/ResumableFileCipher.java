@@ -0,0 +1,306 @@
+package encryption.impl.batchUtils;
+
+import encryption.impl.GroupCipher;
+import encryption.impl.GroupMode;
+import encryption.impl.GroupPassword;
+import encryption.impl.streamUtils.CipherCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * 可断点续传的大文件加密，密文格式同CipherOutputStream
+ * 每提交一块（密文落盘后）原子地写一个检查点：输入输出偏移、初始化向量、加密器状态（链接状态或计数器）与链式校验和，
+ * 作业被中断后再次调用encrypt即从最后一个检查点继续，完成后删除检查点
+ * 初始化向量在首次运行时随机生成并写在输出文件头部，续传时取自检查点并须与输出文件头部一致
+ * 链式校验和：h(i) = CRC32C(h(i-1) || 第i块密文)，续传时只需重算最后一块即可确认输出文件末尾完好，
+ * 检查点另记录密钥指纹（全0分组的密文的SHA-256），换了密钥的实例不会接着旧密钥的输出继续加密
+ * 源文件大小或修改时间变化、模式或块大小或密钥不同、校验失败时放弃检查点从头开始
+ */
+public class ResumableFileCipher {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int MAGIC = 0x45435032;
+    private static final String DIGEST = "SHA-256";
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    private final GroupPassword<?> groupPassword;
+    private final GroupMode mode;
+    private final int chunkSize;
+    private final byte[] keyFingerprint;
+
+    /**
+     * 检查点
+     */
+    private static final class Checkpoint {
+        private String mode;
+        private int chunkSize;
+        private long srcLength;
+        private long srcModified;
+        private long inOffset;
+        private long outOffset;
+        private byte[] keyFingerprint;
+        private byte[] iv;
+        /**
+         * 最后一块密文的长度、其前的链式校验和与包含它的链式校验和
+         */
+        private int lastChunkLength;
+        private int previousHash;
+        private int hash;
+        private String state;
+    }
+
+    public ResumableFileCipher(GroupPassword<?> groupPassword, GroupMode mode) {
+        this(groupPassword, mode, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param groupPassword
+     * @param mode
+     * @param chunkSize     两个检查点之间的明文字节数，须为分组字节数的整数倍
+     */
+    public ResumableFileCipher(GroupPassword<?> groupPassword, GroupMode mode, int chunkSize) {
+        if (groupPassword == null) {
+            throw new NullPointerException("groupPassword is null");
+        }
+        if (mode == null) {
+            throw new NullPointerException("mode is null");
+        }
+        if (chunkSize <= 0 || chunkSize % groupPassword.getBlockBytes() != 0) {
+            throw new IllegalArgumentException("块大小须为分组字节数的正整数倍");
+        }
+        this.groupPassword = groupPassword;
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+        this.keyFingerprint = keyFingerprint(groupPassword);
+    }
+
+    /**
+     * dst对应的检查点文件
+     *
+     * @param dst
+     * @return
+     */
+    public static File checkpointOf(File dst) {
+        return new File(dst.getPath() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * 加密src到dst，存在有效检查点时从检查点继续
+     *
+     * @param src
+     * @param dst
+     * @return 密文字节数
+     * @throws IOException
+     */
+    public long encrypt(File src, File dst) throws IOException {
+        if (src == null) {
+            throw new NullPointerException("src is null");
+        }
+        if (dst == null) {
+            throw new NullPointerException("dst is null");
+        }
+        final File checkpointFile = checkpointOf(dst);
+        final long srcLength = src.length();
+        final long srcModified = src.lastModified();
+        try (
+                FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)
+        ) {
+            Checkpoint checkpoint = this.load(checkpointFile);
+            if (checkpoint != null && !this.isValid(checkpoint, srcLength, srcModified, out)) {
+                checkpoint = null;
+            }
+            final GroupCipher<?> cipher = this.groupPassword.newEncryptor(this.mode);
+            if (checkpoint == null) {
+                checkpoint = new Checkpoint();
+                checkpoint.mode = this.mode.name();
+                checkpoint.chunkSize = this.chunkSize;
+                checkpoint.srcLength = srcLength;
+                checkpoint.srcModified = srcModified;
+                checkpoint.keyFingerprint = this.keyFingerprint;
+            } else {
+                cipher.init(checkpoint.iv);
+                cipher.restoreState(checkpoint.state);
+            }
+            //检查点之后写出的部分作废
+            out.truncate(checkpoint.outOffset);
+            //续传时初始化向量已在输出文件中
+            final CipherCodec codec = new CipherCodec(cipher, checkpoint.outOffset == 0);
+            final byte[] buffer = new byte[this.chunkSize];
+            while (true) {
+                final int n = (int) Math.min(this.chunkSize, srcLength - checkpoint.inOffset);
+                readFully(in, ByteBuffer.wrap(buffer, 0, n), checkpoint.inOffset);
+                final byte[] res = codec.update(buffer, 0, n);
+                final boolean end = checkpoint.inOffset + n == srcLength;
+                final byte[] chunk = end ? concat(res, codec.doFinal()) : res;
+                writeFully(out, ByteBuffer.wrap(chunk), checkpoint.outOffset);
+                if (end) {
+                    out.force(true);
+                    Files.deleteIfExists(checkpointFile.toPath());
+                    return checkpoint.outOffset + chunk.length;
+                }
+                out.force(false);
+                checkpoint.inOffset += n;
+                checkpoint.outOffset += chunk.length;
+                checkpoint.lastChunkLength = chunk.length;
+                checkpoint.previousHash = checkpoint.hash;
+                checkpoint.hash = chainHash(checkpoint.previousHash, chunk, chunk.length);
+                checkpoint.iv = cipher.getInitVector();
+                checkpoint.state = cipher.exportState();
+                this.save(checkpoint, checkpointFile);
+            }
+        }
+    }
+
+    /**
+     * 检查点与源文件、本实例参数及密钥一致，输出文件头部为检查点中的初始化向量，且输出文件的最后一块通过校验
+     */
+    private boolean isValid(Checkpoint checkpoint, long srcLength, long srcModified, FileChannel out) throws IOException {
+        if (!this.mode.name().equals(checkpoint.mode) || checkpoint.chunkSize != this.chunkSize
+                || checkpoint.srcLength != srcLength || checkpoint.srcModified != srcModified
+                || !Arrays.equals(checkpoint.keyFingerprint, this.keyFingerprint)
+                || checkpoint.iv.length != this.groupPassword.getBlockBytes()
+                || checkpoint.inOffset > srcLength || out.size() < checkpoint.outOffset
+                || checkpoint.outOffset < checkpoint.iv.length) {
+            return false;
+        }
+        final byte[] header = new byte[checkpoint.iv.length];
+        readFully(out, ByteBuffer.wrap(header), 0);
+        if (!Arrays.equals(header, checkpoint.iv)) {
+            return false;
+        }
+        final byte[] last = new byte[checkpoint.lastChunkLength];
+        readFully(out, ByteBuffer.wrap(last), checkpoint.outOffset - last.length);
+        return chainHash(checkpoint.previousHash, last, last.length) == checkpoint.hash;
+    }
+
+    private Checkpoint load(File checkpointFile) {
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpointFile.toPath()))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final Checkpoint checkpoint = new Checkpoint();
+            checkpoint.mode = in.readUTF();
+            checkpoint.chunkSize = in.readInt();
+            checkpoint.srcLength = in.readLong();
+            checkpoint.srcModified = in.readLong();
+            checkpoint.inOffset = in.readLong();
+            checkpoint.outOffset = in.readLong();
+            checkpoint.keyFingerprint = readBytes(in);
+            checkpoint.iv = readBytes(in);
+            checkpoint.lastChunkLength = in.readInt();
+            checkpoint.previousHash = in.readInt();
+            checkpoint.hash = in.readInt();
+            final char[] state = new char[in.readInt()];
+            for (int i = 0; i < state.length; i++) {
+                state[i] = in.readChar();
+            }
+            checkpoint.state = new String(state);
+            return checkpoint;
+        } catch (IOException e) {
+            //检查点损坏时从头开始
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件并落盘，再原子替换，中断时旧检查点仍然完整
+     */
+    private void save(Checkpoint checkpoint, File checkpointFile) throws IOException {
+        final File temp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(checkpoint.mode);
+            out.writeInt(checkpoint.chunkSize);
+            out.writeLong(checkpoint.srcLength);
+            out.writeLong(checkpoint.srcModified);
+            out.writeLong(checkpoint.inOffset);
+            out.writeLong(checkpoint.outOffset);
+            out.writeInt(checkpoint.keyFingerprint.length);
+            out.write(checkpoint.keyFingerprint);
+            out.writeInt(checkpoint.iv.length);
+            out.write(checkpoint.iv);
+            out.writeInt(checkpoint.lastChunkLength);
+            out.writeInt(checkpoint.previousHash);
+            out.writeInt(checkpoint.hash);
+            out.writeInt(checkpoint.state.length());
+            out.writeChars(checkpoint.state);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 密钥指纹：全0分组在该密钥下的密文（即以全0初始化向量做CTR的首个计数器分组）的SHA-256，不泄露密钥本身
+     */
+    private static byte[] keyFingerprint(GroupPassword<?> groupPassword) {
+        final byte[] block = new byte[groupPassword.getBlockBytes()];
+        groupPassword.crypt_CTR(new byte[block.length], 0, block, 0, block.length);
+        try {
+            return MessageDigest.getInstance(DIGEST).digest(block);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("检查点已损坏");
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int chainHash(int previousHash, byte[] bytes, int len) {
+        final CRC32C crc32C = new CRC32C();
+        crc32C.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, previousHash));
+        crc32C.update(bytes, 0, len);
+        return (int) crc32C.getValue();
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail) {
+        final byte[] res = new byte[head.length + tail.length];
+        System.arraycopy(head, 0, res, 0, head.length);
+        System.arraycopy(tail, 0, res, head.length, tail.length);
+        return res;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("文件被截断");
+            }
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package encryption.impl.batchUtils;
+
+import encryption.impl.GroupMode;
+import encryption.impl.GroupPassword;
+import encryption.impl.streamUtils.CipherOutputStream;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 监视目录的增量加密
+ * 启动时全量扫描一次，之后经WatchService监听新建与修改的文件，加密到目标目录的对应位置（密文格式同CipherOutputStream），
+ * 源文件或目录被删除时一并删除目标目录中对应的密文与索引项
+ * 持久化的变更索引记录每个已加密文件的(相对路径, 大小, 修改时间, 内容SHA-256)：
+ * 大小与修改时间都未变的文件直接跳过，不读内容；只有修改时间变化时先比对内容摘要，内容未变则只更新索引；
+ * 大小变化的文件一定已改变，加密时顺带计算摘要，不再单独读一遍
+ * 事件在QUIET_MILLIS内无新事件后成批处理，避免文件写到一半就被加密；事件丢失（OVERFLOW）时重新全量扫描
+ */
+public class WatchFolderCipher implements Closeable {
+
+    private static final int INDEX_MAGIC = 0x45435749;
+    private static final long QUIET_MILLIS = 500L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String DIGEST = "SHA-256";
+
+    private final GroupPassword<?> groupPassword;
+    private final GroupMode mode;
+    private final Path srcRoot;
+    private final Path dstRoot;
+    private final Path indexFile;
+
+    /**
+     * 相对路径到索引项，持有本对象锁时访问
+     */
+    private final Map<String, Entry> index = new HashMap<>();
+
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * 索引项
+     */
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final byte[] hash;
+
+        private Entry(long size, long modified, byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * @param groupPassword
+     * @param mode
+     * @param srcRoot       被监视的目录
+     * @param dstRoot       密文目录，不能位于srcRoot之内
+     * @param indexFile     变更索引文件，不存在时视为空索引
+     * @throws IOException
+     */
+    public WatchFolderCipher(GroupPassword<?> groupPassword, GroupMode mode, Path srcRoot, Path dstRoot,
+                             Path indexFile) throws IOException {
+        if (groupPassword == null) {
+            throw new NullPointerException("groupPassword is null");
+        }
+        if (mode == null) {
+            throw new NullPointerException("mode is null");
+        }
+        if (srcRoot == null || dstRoot == null || indexFile == null) {
+            throw new NullPointerException("path is null");
+        }
+        this.groupPassword = groupPassword;
+        this.mode = mode;
+        this.srcRoot = srcRoot.toAbsolutePath().normalize();
+        this.dstRoot = dstRoot.toAbsolutePath().normalize();
+        this.indexFile = indexFile.toAbsolutePath().normalize();
+        if (this.dstRoot.startsWith(this.srcRoot) || this.indexFile.startsWith(this.srcRoot)) {
+            throw new IllegalArgumentException("目标目录与索引文件不能位于源目录之内");
+        }
+        this.loadIndex();
+    }
+
+    /**
+     * 全量扫描一次，加密所有新增或改变的文件并保存索引
+     *
+     * @return 本次加密的文件数
+     * @throws IOException
+     */
+    public synchronized int sweep() throws IOException {
+        final List<Path> files;
+        try (Stream<Path> walk = Files.walk(this.srcRoot)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        final int count = this.process(files);
+        this.saveIndex();
+        return count;
+    }
+
+    /**
+     * 启动后台监视线程：先全量扫描，之后处理目录变更事件
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (this.watcher != null) {
+            throw new IllegalStateException("已经启动");
+        }
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.registerAll(this.srcRoot);
+        this.sweep();
+        this.watcher = new Thread(this::watch, "watch-folder-cipher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+        if (this.watcher != null && this.watcher != Thread.currentThread()) {
+            this.watcher.interrupt();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                try {
+                    this.handleEvents(this.watchService.take());
+                } catch (ClosedWatchServiceException e) {
+                    //已关闭
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    //单批失败（如文件在处理中被删除，Files.walk抛出UncheckedIOException）不终止监视
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            //已关闭
+        }
+    }
+
+    /**
+     * 收集事件直到安静期内没有新事件，然后成批处理
+     */
+    private void handleEvents(WatchKey key) throws IOException, InterruptedException {
+        final Set<Path> changed = new LinkedHashSet<>();
+        boolean overflow = false;
+        while (key != null) {
+            final Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                final Path path = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    changed.removeIf(file -> file.startsWith(path));
+                    this.remove(path);
+                } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    //新目录：注册监视，其中已有的文件一并处理
+                    this.registerAll(path);
+                    try (Stream<Path> walk = Files.walk(path)) {
+                        walk.filter(Files::isRegularFile).forEach(changed::add);
+                    }
+                } else {
+                    changed.add(path);
+                }
+            }
+            key.reset();
+            key = this.watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        synchronized (this) {
+            if (overflow) {
+                this.sweep();
+            } else {
+                this.process(changed.stream().filter(Files::isRegularFile).collect(Collectors.toList()));
+                this.saveIndex();
+            }
+        }
+    }
+
+    private void registerAll(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) {
+                dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    /**
+     * 源文件或目录被删除：删除目标目录中对应的密文及其下所有索引项
+     */
+    private synchronized void remove(Path path) throws IOException {
+        this.index.keySet().removeIf(relative -> this.srcRoot.resolve(relative).startsWith(path));
+        final Path target = this.dstRoot.resolve(this.relative(path));
+        if (!Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(target);
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(target)) {
+            //先删子项再删目录
+            for (Path item : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(item);
+            }
+        }
+    }
+
+    /**
+     * 按索引判断并加密改变的文件，单个文件失败不影响其他文件
+     */
+    private int process(List<Path> files) {
+        int count = 0;
+        for (Path file : files) {
+            try {
+                if (this.processFile(file)) {
+                    count++;
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return count;
+    }
+
+    private boolean processFile(Path file) throws IOException {
+        final String relative = this.relative(file);
+        final long size = Files.size(file);
+        final long modified = Files.getLastModifiedTime(file).toMillis();
+        final Entry entry = this.index.get(relative);
+        if (entry != null && entry.size == size) {
+            if (entry.modified == modified) {
+                return false;
+            }
+            //只有修改时间变化：内容未变则只更新索引
+            final byte[] hash = this.hash(file);
+            if (Arrays.equals(hash, entry.hash)) {
+                this.index.put(relative, new Entry(size, modified, hash));
+                return false;
+            }
+        }
+        final Path target = this.dstRoot.resolve(relative);
+        Files.createDirectories(target.getParent());
+        final MessageDigest digest = newDigest();
+        try (
+                InputStream in = new DigestInputStream(Files.newInputStream(file), digest);
+                OutputStream out = new CipherOutputStream(Files.newOutputStream(target),
+                        this.groupPassword.newEncryptor(this.mode))
+        ) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        this.index.put(relative, new Entry(size, modified, digest.digest()));
+        return true;
+    }
+
+    private byte[] hash(Path file) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String relative(Path file) {
+        return this.srcRoot.relativize(file.toAbsolutePath().normalize()).toString();
+    }
+
+    private void loadIndex() throws IOException {
+        if (!Files.isRegularFile(this.indexFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(this.indexFile))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("索引文件格式不对：" + this.indexFile);
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final byte[] hash = new byte[in.readUnsignedByte()];
+                in.readFully(hash);
+                this.index.put(path, new Entry(size, modified, hash));
+            }
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换
+     */
+    private void saveIndex() throws IOException {
+        final Path temp = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+        if (this.indexFile.getParent() != null) {
+            Files.createDirectories(this.indexFile.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(this.index.size());
+            for (Map.Entry<String, Entry> item : this.index.entrySet()) {
+                out.writeUTF(item.getKey());
+                out.writeLong(item.getValue().size);
+                out.writeLong(item.getValue().modified);
+                out.writeByte(item.getValue().hash.length);
+                out.write(item.getValue().hash);
+            }
+        }
+        Files.move(temp, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
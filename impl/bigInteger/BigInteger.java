@@ -2,111 +2,218 @@ package encryption.impl.bigInteger;
 
 import encryption.Encryptible;
 
-import java.util.Arrays;
 import java.util.Random;
 
-public class BigInteger extends java.math.BigInteger implements Encryptible<BigInteger> {
+/**
+ * RSA使用的大整数
+ * 以组合方式包装不可变的java.math.BigInteger：运算直接返回包装了JDK结果的新对象，
+ * 不再经toByteArray()序列化、再解析一遍中间结果
+ */
+public class BigInteger extends Number implements Encryptible<BigInteger>, Comparable<BigInteger> {
 
     public static final BigInteger ONE = new BigInteger(java.math.BigInteger.ONE);
     public static final BigInteger ZERO = new BigInteger(java.math.BigInteger.ZERO);
 
+    private final java.math.BigInteger value;
+
     public BigInteger(byte[] val) {
-        super(val);
+        this(new java.math.BigInteger(val));
     }
 
     public BigInteger(int signum, byte[] magnitude) {
-        super(signum, magnitude);
+        this(new java.math.BigInteger(signum, magnitude));
     }
 
     public BigInteger(String val, int radix) {
-        super(val, radix);
+        this(new java.math.BigInteger(val, radix));
     }
 
     public BigInteger(String val) {
-        super(val);
+        this(new java.math.BigInteger(val));
     }
 
     public BigInteger(int numBits, Random rnd) {
-        super(numBits, rnd);
+        this(new java.math.BigInteger(numBits, rnd));
     }
 
     public BigInteger(int bitLength, int certainty, Random rnd) {
-        super(bitLength, certainty, rnd);
+        this(new java.math.BigInteger(bitLength, certainty, rnd));
     }
 
+    /**
+     * 直接包装，不复制
+     *
+     * @param bigInteger
+     */
     public BigInteger(java.math.BigInteger bigInteger) {
-        this(bigInteger.toByteArray());
+        if (bigInteger == null) {
+            throw new NullPointerException("bigInteger is null");
+        }
+        this.value = bigInteger;
+    }
+
+    public static BigInteger valueOf(long val) {
+        return new BigInteger(java.math.BigInteger.valueOf(val));
+    }
+
+    /**
+     * 被包装的JDK大整数
+     *
+     * @return
+     */
+    public java.math.BigInteger bigIntegerValue() {
+        return this.value;
     }
 
     @Override
     public BigInteger xor(BigInteger val) {
-        return new BigInteger(super.xor(val));
+        return new BigInteger(this.value.xor(val.value));
     }
 
+    /**
+     * 左移n位，isLoop时把原数最高的n位移入低位
+     * 直接移位与取掩码，不经二进制字符串
+     */
     @Override
     public BigInteger leftShift(int n, boolean isLoop) {
-        if (n < 0) {
+        final int bitLength = Math.max(1, this.value.bitLength());
+        if (n < 0 || n > bitLength) {
             throw new IllegalArgumentException("n is invalid");
         }
-        BigInteger thisOne = new BigInteger(this);
         if (n == 0) {
-            return thisOne;
+            return this;
         }
-        final java.math.BigInteger bigInteger = new java.math.BigInteger(thisOne.toString(2).substring(0, n), 2);
-        java.math.BigInteger shiftLeft = thisOne.shiftLeft(n);
+        java.math.BigInteger shiftLeft = this.value.shiftLeft(n);
         if (isLoop) {
-            shiftLeft = shiftLeft.or(bigInteger);
+            shiftLeft = shiftLeft.or(this.value.shiftRight(bitLength - n));
         }
         return new BigInteger(shiftLeft);
     }
 
     public BigInteger subtract(BigInteger val) {
-        return new BigInteger(super.subtract(val));
+        return new BigInteger(this.value.subtract(val.value));
     }
 
     public BigInteger multiply(BigInteger val) {
-        return new BigInteger(super.multiply(val));
+        return new BigInteger(this.value.multiply(val.value));
     }
 
     public BigInteger divide(BigInteger val) {
-        return new BigInteger(super.divide(val));
+        return new BigInteger(this.value.divide(val.value));
     }
 
     public BigInteger modPow(BigInteger exponent, BigInteger m) {
-        return new BigInteger(super.modPow(exponent, m));
+        return new BigInteger(this.value.modPow(exponent.value, m.value));
+    }
+
+    public BigInteger modInverse(BigInteger m) {
+        return new BigInteger(this.value.modInverse(m.value));
     }
 
     public BigInteger add(BigInteger val) {
-        return new BigInteger(super.add(val));
+        return new BigInteger(this.value.add(val.value));
     }
 
-    //父子静态方法并无任何关系，单纯是重名方法,静态方法会分析整个字节码文件，刚刚报的NPE真正原因在于其他本字节码文件静态方法调用存在npe异常
     public static BigInteger probablePrime(int bitLength, Random random) {
-        java.math.BigInteger probablePrime = java.math.BigInteger.probablePrime(bitLength, random);
-        return new BigInteger(probablePrime);
+        return new BigInteger(java.math.BigInteger.probablePrime(bitLength, random));
     }
 
-
     public BigInteger gcd(BigInteger val) {
-        return new BigInteger(super.gcd(val));
+        return new BigInteger(this.value.gcd(val.value));
     }
 
     public BigInteger mod(BigInteger m) {
-        return new BigInteger(super.mod(m));
+        return new BigInteger(this.value.mod(m.value));
     }
 
     public BigInteger remainder(BigInteger val) {
-        return new BigInteger(super.remainder(val));
+        return new BigInteger(this.value.remainder(val.value));
     }
 
-    @Override
     public BigInteger negate() {
-        return new BigInteger(super.negate());
+        return new BigInteger(this.value.negate());
     }
 
-    @Override
     public BigInteger nextProbablePrime() {
-        return new BigInteger(super.nextProbablePrime());
+        return new BigInteger(this.value.nextProbablePrime());
+    }
+
+    public BigInteger shiftLeft(int n) {
+        return new BigInteger(this.value.shiftLeft(n));
+    }
+
+    public BigInteger shiftRight(int n) {
+        return new BigInteger(this.value.shiftRight(n));
+    }
+
+    public boolean testBit(int n) {
+        return this.value.testBit(n);
+    }
+
+    public boolean isProbablePrime(int certainty) {
+        return this.value.isProbablePrime(certainty);
+    }
+
+    public int bitLength() {
+        return this.value.bitLength();
+    }
+
+    public int signum() {
+        return this.value.signum();
+    }
+
+    public byte[] toByteArray() {
+        return this.value.toByteArray();
+    }
+
+    @Override
+    public int compareTo(BigInteger val) {
+        return this.value.compareTo(val.value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BigInteger)) {
+            return false;
+        }
+        return this.value.equals(((BigInteger) obj).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.value.hashCode();
+    }
+
+    public String toString(int radix) {
+        return this.value.toString(radix);
+    }
+
+    @Override
+    public String toString() {
+        return this.value.toString();
+    }
+
+    @Override
+    public int intValue() {
+        return this.value.intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return this.value.longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return this.value.floatValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return this.value.doubleValue();
     }
 
     /**
@@ -119,7 +226,7 @@ public class BigInteger extends java.math.BigInteger implements Encryptible<BigI
      */
     /**
      * 用于明文字符串转换成大整数，需要数值小于模，
-     * 返回unicode编码标准的字符串对应的数串作为的大整数串
+     * 每个字符按大端取两个字节，拼成的字节串作为无符号大整数的数值
      *
      * @param charStr
      * @return
@@ -128,64 +235,57 @@ public class BigInteger extends java.math.BigInteger implements Encryptible<BigI
         if (charStr == null) {
             throw new NullPointerException("string data is null!");
         }
-
-
-        char[] chars = charStr.toCharArray();
-        final int length = chars.length;
-        StringBuilder res = new StringBuilder();
-        final char mask = 0x0001;
-        final int uBitSize = Character.SIZE;
-
+        final int length = charStr.length();
+        final byte[] magnitude = new byte[length * Character.BYTES];
         for (int i = 0; i < length; i++) {
-            char work = chars[i];
-            for (int j = uBitSize - 1; j >= 0; j--) {
-                res.append((work >> j) & mask);
-            }
+            final char work = charStr.charAt(i);
+            magnitude[i * Character.BYTES] = (byte) (work >> Byte.SIZE);
+            magnitude[i * Character.BYTES + 1] = (byte) work;
         }
-//注意以下构造后前导0被抹掉，以下序列化还原的方法会加回去，用加前导“1”防止抹掉不可取，因为bigInteger不只是能用当前方法构造，其他bigInteger就不能调用这对方法了
-        return new BigInteger(res.toString(), 2);
+        //注意前导0字符的数值被抹掉，stringOfValue只补齐到16bit的整数倍，前导0字符不会还原
+        return new BigInteger(1, magnitude);
     }
 
     /**
      * 大整数转换成unicode编码的字符串，由于大素数作模的处理使数串可以超过1024bit，足以直接作为返回串,然而为作进一步加密，采用unicode标准。
+     * 数值的字节串在高位补0到偶数个字节（至少两个），每两字节（大端）取一个字符
      *
      * @return
      */
     public String stringOfValue() {
-        //取数串
-        String binString = this.toString(2);
         /**
          * 19-5-3 曾经因为历史代码没修改过来这里隐藏了bug ， 最终耗了好久， 希望能长记性了！
          * 历史版本的实现是采用了在第一位加前导1保留前导0的暴力解决方法，如今纠正过来，但之前的旧代码只部分更正了，导致自认为诡异的bug
          * bug表现为：虽然有正确解密的次数，但居然还会出现较大频率的错误解密，甚至这导致我怀疑起之前苦心孤诣的RSA算法的可靠性，最后还是测试出来的
          * 建议：多尝试善学善用新的高效debug工具
          */
-//        if ((binChars.length - 1) % Character.SIZE != 0) {
-//            throw new IllegalArgumentException("invalid binChars");
-//        }
-        final int usize = Character.SIZE;
-        final int remainder = binString.length() % usize;
-        if (remainder > 0) {
-            final char[] tmpChars = new char[usize - remainder];
-            Arrays.fill(tmpChars, '0');
-            binString = new String(tmpChars).concat(binString);
+        return this.stringOfValue(Math.max(1, (this.value.bitLength() + Character.SIZE - 1) / Character.SIZE));
+    }
+
+    /**
+     * 转换成定长charCount个字符的字符串，高位补0字符
+     *
+     * @param charCount
+     * @return
+     */
+    public String stringOfValue(int charCount) {
+        if (this.value.signum() < 0) {
+            throw new IllegalArgumentException("负数不能转换为字符串");
+        }
+        if (charCount < 0 || this.value.bitLength() > charCount * Character.SIZE) {
+            throw new IllegalArgumentException("数值超过定长");
         }
-        final char[] binChars = binString.toCharArray();
-        //结果容器
-        final StringBuilder res = new StringBuilder();
-        //按每两字节(对应01串的16字符)取一字符
-        final char mask = 0x0001;
-        final int bitSize = 1;
-        final int groupLength = binChars.length / usize;
-        for (int i = 0; i < groupLength; i++) {
-            char work = 0;
-            for (int j = 0; j < usize; j++) {
-                work <<= bitSize;
-                work |= (binChars[i * usize + j] & mask);
-            }
-            res.append(work);
+        //toByteArray可能多一个符号位的前导0字节，只取低位部分右对齐
+        final byte[] bytes = this.value.toByteArray();
+        final byte[] magnitude = new byte[charCount * Character.BYTES];
+        final int copy = Math.min(bytes.length, magnitude.length);
+        System.arraycopy(bytes, bytes.length - copy, magnitude, magnitude.length - copy, copy);
+        final char[] res = new char[charCount];
+        for (int i = 0; i < charCount; i++) {
+            res[i] = (char) (((magnitude[i * Character.BYTES] & 0xff) << Byte.SIZE)
+                    | (magnitude[i * Character.BYTES + 1] & 0xff));
         }
-        return res.toString();
+        return new String(res);
     }
 
 }
@@ -0,0 +1,72 @@
+package encryption.impl.containerUtils;
+
+import encryption.impl.GroupPassword;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * 分块加密容器的格式，所有整数均为大端
+ * 头部：MAGIC(4) 块大小(4) 分组字节数(4) 初始化向量(分组字节数)
+ * 数据：各块密文依次存放，除最后一块外每块长度均为块大小
+ * 索引：每块一项，偏移(8) 长度(4) 密文CRC32C(4)
+ * 尾部：索引偏移(8) 明文总长(8) MAGIC(4)
+ * 每块以CTR模式独立加密，第i块的计数器从 i << 32 开始，相当于每块有自己的派生初始化向量，
+ * 故读取任意字节区间只需读取、校验并解密它覆盖的块
+ */
+public final class ChunkedContainer {
+
+    public static final int MAGIC = 0x45434B31;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    static final int FOOTER_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    private ChunkedContainer() {
+
+    }
+
+    static int headerSize(int blockBytes) {
+        return Integer.BYTES * 3 + blockBytes;
+    }
+
+    /**
+     * 第chunkIndex块的首个计数器
+     */
+    static long firstCounter(long chunkIndex) {
+        return chunkIndex << Integer.SIZE;
+    }
+
+    static void checkChunkSize(int chunkSize, GroupPassword<?> groupPassword) {
+        if (chunkSize <= 0 || chunkSize % groupPassword.getBlockBytes() != 0) {
+            throw new IllegalArgumentException("块大小须为分组字节数的正整数倍");
+        }
+    }
+
+    static int crc(byte[] bytes, int off, int len) {
+        final CRC32C crc32C = new CRC32C();
+        crc32C.update(bytes, off, len);
+        return (int) crc32C.getValue();
+    }
+
+    /**
+     * 从position处读满buffer
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("容器文件不完整");
+            }
+            position += n;
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
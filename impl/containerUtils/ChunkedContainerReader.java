@@ -0,0 +1,198 @@
+package encryption.impl.containerUtils;
+
+import encryption.impl.GroupPassword;
+import encryption.utils.TaskFailedException;
+import encryption.utils.TaskUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 分块加密容器的随机读取，格式见ChunkedContainer
+ * 打开时只读入头部、尾部与索引，读取任意字节区间时只读取、校验并解密其覆盖的块，
+ * 覆盖多块时并行校验与解密
+ * 基于FileChannel的定位读，可被多个线程同时使用
+ */
+public class ChunkedContainerReader implements Closeable {
+
+    private final GroupPassword<?> groupPassword;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final byte[] iv;
+    private final long length;
+
+    /**
+     * 各块的偏移、长度与校验和
+     */
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] crcs;
+
+    public ChunkedContainerReader(File file, GroupPassword<?> groupPassword) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        if (groupPassword == null) {
+            throw new NullPointerException("groupPassword is null");
+        }
+        this.groupPassword = groupPassword;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(ChunkedContainer.headerSize(groupPassword.getBlockBytes()));
+            ChunkedContainer.readFully(this.channel, header, 0);
+            header.flip();
+            if (header.getInt() != ChunkedContainer.MAGIC) {
+                throw new IOException("不是分块加密容器");
+            }
+            this.chunkSize = header.getInt();
+            if (header.getInt() != groupPassword.getBlockBytes()) {
+                throw new IOException("容器的分组长度与算法不符");
+            }
+            if (this.chunkSize <= 0 || this.chunkSize % groupPassword.getBlockBytes() != 0) {
+                throw new IOException("容器头部已损坏");
+            }
+            this.iv = new byte[groupPassword.getBlockBytes()];
+            header.get(this.iv);
+
+            final long size = this.channel.size();
+            final ByteBuffer footer = ByteBuffer.allocate(ChunkedContainer.FOOTER_SIZE);
+            ChunkedContainer.readFully(this.channel, footer, size - ChunkedContainer.FOOTER_SIZE);
+            footer.flip();
+            final long indexOffset = footer.getLong();
+            this.length = footer.getLong();
+            final long indexSize = size - ChunkedContainer.FOOTER_SIZE - indexOffset;
+            if (footer.getInt() != ChunkedContainer.MAGIC || indexOffset < header.capacity()
+                    || indexSize < 0 || indexSize % ChunkedContainer.INDEX_ENTRY_SIZE != 0
+                    || indexSize / ChunkedContainer.INDEX_ENTRY_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("容器尾部已损坏");
+            }
+            final int chunks = (int) (indexSize / ChunkedContainer.INDEX_ENTRY_SIZE);
+            //除最后一块外每块长度均为块大小，块数须恰好覆盖明文总长，读取时的块号才不会越界
+            if (this.length < 0 || chunks != (this.length + this.chunkSize - 1) / this.chunkSize) {
+                throw new IOException("容器索引与明文总长不符");
+            }
+            final ByteBuffer index = ByteBuffer.allocate((int) indexSize);
+            ChunkedContainer.readFully(this.channel, index, indexOffset);
+            index.flip();
+            this.offsets = new long[chunks];
+            this.lengths = new int[chunks];
+            this.crcs = new int[chunks];
+            for (int i = 0; i < chunks; i++) {
+                this.offsets[i] = index.getLong();
+                this.lengths[i] = index.getInt();
+                this.crcs[i] = index.getInt();
+                if (this.lengths[i] != Math.min(this.chunkSize, this.length - (long) i * this.chunkSize)) {
+                    throw new IOException("容器索引已损坏");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 明文总长
+     *
+     * @return
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * 读取明文中从position开始的至多len个字节
+     *
+     * @param position
+     * @param b
+     * @param off
+     * @param len
+     * @return 读取的字节数，position不小于明文总长时返回-1
+     * @throws IOException 读取失败或块校验不通过
+     */
+    public int read(long position, byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException("b is null");
+        }
+        if (position < 0 || off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (position >= this.length) {
+            return -1;
+        }
+        final int n = (int) Math.min(len, this.length - position);
+        if (n == 0) {
+            return 0;
+        }
+        final int firstChunk = (int) (position / this.chunkSize);
+        final int lastChunk = (int) ((position + n - 1) / this.chunkSize);
+        //在调用线程上读入密文，只把校验与解密交给线程池：某块校验失败时其余任务会被中断，
+        //若任务中正在读FileChannel，中断会关闭整个通道
+        final byte[][] chunks = new byte[lastChunk - firstChunk + 1][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new byte[this.lengths[firstChunk + i]];
+            ChunkedContainer.readFully(this.channel, ByteBuffer.wrap(chunks[i]), this.offsets[firstChunk + i]);
+        }
+        try {
+            TaskUtil.invokeBlocks(chunks.length, 1, idx -> {
+                final int chunk = firstChunk + idx;
+                final long chunkStart = (long) chunk * this.chunkSize;
+                final byte[] plain = chunks[idx];
+                try {
+                    this.decryptChunk(chunk, plain);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                final long from = Math.max(position, chunkStart);
+                final long to = Math.min(position + n, chunkStart + plain.length);
+                System.arraycopy(plain, (int) (from - chunkStart), b, off + (int) (from - position), (int) (to - from));
+                return "";
+            });
+        } catch (TaskFailedException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        return n;
+    }
+
+    /**
+     * 读取明文中从position开始的len个字节，不足时返回实际可读的部分
+     *
+     * @param position
+     * @param len
+     * @return
+     * @throws IOException
+     */
+    public byte[] read(long position, int len) throws IOException {
+        if (position < 0 || len < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] bytes = new byte[(int) Math.max(0, Math.min(len, this.length - position))];
+        if (bytes.length > 0) {
+            this.read(position, bytes, 0, bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * 校验并原地解密第chunk块
+     */
+    private void decryptChunk(int chunk, byte[] bytes) throws IOException {
+        if (ChunkedContainer.crc(bytes, 0, bytes.length) != this.crcs[chunk]) {
+            throw new IOException("第" + chunk + "块校验失败");
+        }
+        this.groupPassword.crypt_CTR(this.iv, ChunkedContainer.firstCounter(chunk), bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
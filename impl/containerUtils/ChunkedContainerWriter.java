@@ -0,0 +1,151 @@
+package encryption.impl.containerUtils;
+
+import encryption.impl.GroupPassword;
+import encryption.utils.TaskUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+
+/**
+ * 分块加密容器的写入流，格式见ChunkedContainer
+ * 写满若干块（并行度个）后并行加密并依次写出，close时写出最后一块、索引与尾部
+ * 非线程安全
+ */
+public class ChunkedContainerWriter extends OutputStream {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final GroupPassword<?> groupPassword;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final byte[] iv;
+
+    /**
+     * 待加密的若干块
+     */
+    private final byte[] buffer;
+    private int count;
+
+    private long chunkIndex;
+    private long position;
+    private long plainLength;
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private boolean closed;
+
+    public ChunkedContainerWriter(File file, GroupPassword<?> groupPassword) throws IOException {
+        this(file, groupPassword, ChunkedContainer.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param file          容器文件，已存在时覆盖
+     * @param groupPassword
+     * @param chunkSize     块大小，须为分组字节数的整数倍
+     * @throws IOException
+     */
+    public ChunkedContainerWriter(File file, GroupPassword<?> groupPassword, int chunkSize) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        if (groupPassword == null) {
+            throw new NullPointerException("groupPassword is null");
+        }
+        ChunkedContainer.checkChunkSize(chunkSize, groupPassword);
+        this.groupPassword = groupPassword;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[chunkSize * Math.max(1, TaskUtil.getParallelism())];
+        this.iv = new byte[groupPassword.getBlockBytes()];
+        RANDOM.nextBytes(this.iv);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        final ByteBuffer header = ByteBuffer.allocate(ChunkedContainer.headerSize(this.iv.length));
+        header.putInt(ChunkedContainer.MAGIC).putInt(chunkSize).putInt(this.iv.length).put(this.iv).flip();
+        ChunkedContainer.writeFully(this.channel, header, 0);
+        this.position = header.limit();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.closed) {
+            throw new IOException("stream closed");
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            final int n = Math.min(len, this.buffer.length - this.count);
+            System.arraycopy(b, off, this.buffer, this.count, n);
+            this.count += n;
+            off += n;
+            len -= n;
+            if (this.count == this.buffer.length) {
+                this.flushChunks();
+            }
+        }
+    }
+
+    /**
+     * 加密并写出缓冲中的所有块，多于一块时并行加密
+     */
+    private void flushChunks() throws IOException {
+        if (this.count == 0) {
+            return;
+        }
+        final int chunks = (this.count + this.chunkSize - 1) / this.chunkSize;
+        final int[] crcs = new int[chunks];
+        final int length = this.count;
+        final long first = this.chunkIndex;
+        TaskUtil.invokeBlocks(chunks, 1, idx -> {
+            final int sp = idx * this.chunkSize;
+            final int n = Math.min(this.chunkSize, length - sp);
+            this.groupPassword.crypt_CTR(this.iv, ChunkedContainer.firstCounter(first + idx), this.buffer, sp, n);
+            crcs[idx] = ChunkedContainer.crc(this.buffer, sp, n);
+            return "";
+        });
+        ChunkedContainer.writeFully(this.channel, ByteBuffer.wrap(this.buffer, 0, length), this.position);
+        final ByteBuffer entry = ByteBuffer.allocate(ChunkedContainer.INDEX_ENTRY_SIZE);
+        for (int i = 0; i < chunks; i++) {
+            final int n = Math.min(this.chunkSize, length - i * this.chunkSize);
+            entry.clear();
+            entry.putLong(this.position).putInt(n).putInt(crcs[i]);
+            this.index.write(entry.array(), 0, entry.capacity());
+            this.position += n;
+        }
+        this.chunkIndex += chunks;
+        this.plainLength += length;
+        this.count = 0;
+    }
+
+    /**
+     * 写出剩余的块、索引与尾部
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.flushChunks();
+            final long indexOffset = this.position;
+            ChunkedContainer.writeFully(this.channel, ByteBuffer.wrap(this.index.toByteArray()), this.position);
+            this.position += this.index.size();
+            final ByteBuffer footer = ByteBuffer.allocate(ChunkedContainer.FOOTER_SIZE);
+            footer.putLong(indexOffset).putLong(this.plainLength).putInt(ChunkedContainer.MAGIC).flip();
+            ChunkedContainer.writeFully(this.channel, footer, this.position);
+            this.channel.force(true);
+        } finally {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupCipher;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 通道版本的加解密装饰器，基于CipherInputStream/CipherOutputStream
+ */
+public class CipherChannels {
+
+    private CipherChannels() {
+
+    }
+
+    /**
+     * 从channel读出的字节经cipher处理后返回
+     *
+     * @param channel
+     * @param cipher
+     * @return
+     */
+    public static ReadableByteChannel newReadableChannel(ReadableByteChannel channel, GroupCipher<?> cipher) {
+        if (channel == null) {
+            throw new NullPointerException("channel is null");
+        }
+        return Channels.newChannel(new CipherInputStream(Channels.newInputStream(channel), cipher));
+    }
+
+    /**
+     * 写入的字节经cipher处理后写到channel，关闭时写出最后的分组
+     *
+     * @param channel
+     * @param cipher
+     * @return
+     */
+    public static WritableByteChannel newWritableChannel(WritableByteChannel channel, GroupCipher<?> cipher) {
+        if (channel == null) {
+            throw new NullPointerException("channel is null");
+        }
+        return Channels.newChannel(new CipherOutputStream(Channels.newOutputStream(channel), cipher));
+    }
+}
@@ -0,0 +1,285 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupCipher;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * 字节流与分组密码之间的编解码
+ * 分组密码以字符（16bit）为单位，故：
+ * 加密方向：明文字节每两个组成一个字符（大端），结束时追加一个结束符，明文字节数为奇数时最后一个字节放在结束符的低字节，
+ * 密文字符按UTF-16BE逐字符写成两个字节，不经过任何字符集编码；
+ * 解密方向相反，暂扣最后一个明文字符，直到结束时据结束符还原原始字节数。
+ * 结束符非零，故分组模式解密时去掉的末尾填充字符不会吃掉明文中的零字节
+ * 每条消息的密文以随机初始化向量（分组字节数）开头：加密时生成并先于密文写出，解密时先读出并设置到GroupCipher，
+ * 密文因而可由任何同密钥的实例解密，不依赖加密时的实例
+ * 另有按字符处理的updateText/doFinalText，供直接处理字符片段的CipherProcessor使用：不做字节编码，
+ * 初始化向量按UTF-16BE作为密文开头的getBlockBytes() / 2个字符；同一实例不可混用两种方式
+ * 只保留一个字节、一个字符与初始化向量的跨调用状态，非线程安全
+ */
+public class CipherCodec {
+
+    /**
+     * 明文字节数为偶数时的结束符
+     */
+    public static final char END_EVEN = 0x0100;
+    /**
+     * 明文字节数为奇数时的结束符高字节，低字节为最后一个明文字节
+     */
+    public static final char END_ODD = 0x0200;
+
+    private static final int BYTE_MASK = 0xff;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final GroupCipher<?> cipher;
+
+    /**
+     * 本条消息的初始化向量是否已写出（加密）或已读完（解密），
+     * 解密时ivPos为已读出的字节数
+     */
+    private boolean ivDone;
+    private final byte[] iv;
+    private int ivPos;
+
+    /**
+     * 不足一个字符的输入字节，-1表示无
+     */
+    private int carry = -1;
+
+    /**
+     * 解密方向暂扣的最后一个明文字符
+     */
+    private char held;
+    private boolean hasHeld;
+
+    public CipherCodec(GroupCipher<?> cipher) {
+        this(cipher, true);
+    }
+
+    /**
+     * @param cipher
+     * @param withIv 为false时第一条消息不写出（或读取）初始化向量，
+     *               用于续写已写出初始化向量的消息，此时cipher须已恢复该初始化向量及其状态
+     */
+    public CipherCodec(GroupCipher<?> cipher, boolean withIv) {
+        if (cipher == null) {
+            throw new NullPointerException("cipher is null");
+        }
+        this.cipher = cipher;
+        this.iv = new byte[cipher.getBlockBytes()];
+        this.ivDone = !withIv;
+    }
+
+    public boolean isEncrypt() {
+        return this.cipher.isEncrypt();
+    }
+
+    /**
+     * 输入一段字节，返回本次可以确定的输出字节
+     *
+     * @param bytes
+     * @param off
+     * @param len
+     * @return
+     */
+    public byte[] update(byte[] bytes, int off, int len) {
+        if (this.isEncrypt()) {
+            final byte[] head = this.startEncrypt();
+            final byte[] out = toBytes(this.cipher.update(this.toChars(bytes, off, len)));
+            return concat(head, out);
+        }
+        if (!this.ivDone) {
+            final int n = Math.min(len, this.iv.length - this.ivPos);
+            System.arraycopy(bytes, off, this.iv, this.ivPos, n);
+            this.ivPos += n;
+            off += n;
+            len -= n;
+            if (this.ivPos < this.iv.length) {
+                return new byte[0];
+            }
+            this.cipher.init(this.iv);
+            this.ivDone = true;
+        }
+        return this.plainBytes(this.cipher.update(this.toChars(bytes, off, len)), false);
+    }
+
+    /**
+     * 结束，返回剩余的输出字节
+     *
+     * @return
+     */
+    public byte[] doFinal() {
+        try {
+            if (this.isEncrypt()) {
+                final byte[] head = this.startEncrypt();
+                final char tail = this.carry >= 0 ? (char) (END_ODD | this.carry) : END_EVEN;
+                return concat(head, toBytes(this.cipher.update(String.valueOf(tail)).concat(this.cipher.doFinal())));
+            }
+            if (!this.ivDone) {
+                throw new IllegalArgumentException("密文缺少初始化向量");
+            }
+            if (this.carry >= 0) {
+                throw new IllegalArgumentException("密文字节数不完整");
+            }
+            return this.plainBytes(this.cipher.doFinal(), true);
+        } finally {
+            this.carry = -1;
+            this.hasHeld = false;
+            this.ivDone = false;
+            this.ivPos = 0;
+        }
+    }
+
+    /**
+     * 输入一段字符，返回本次可以确定的输出字符
+     *
+     * @param text
+     * @return
+     */
+    public String updateText(CharSequence text) {
+        if (text == null) {
+            throw new NullPointerException("text is null");
+        }
+        if (this.isEncrypt()) {
+            final String head = toText(this.startEncrypt());
+            return head.concat(this.cipher.update(text));
+        }
+        int sp = 0;
+        while (!this.ivDone && sp < text.length()) {
+            final char c = text.charAt(sp++);
+            this.iv[this.ivPos++] = (byte) (c >> Byte.SIZE);
+            this.iv[this.ivPos++] = (byte) c;
+            if (this.ivPos == this.iv.length) {
+                this.cipher.init(this.iv);
+                this.ivDone = true;
+            }
+        }
+        return sp == text.length() ? "" : this.cipher.update(text.subSequence(sp, text.length()));
+    }
+
+    /**
+     * 按字符处理时结束本条消息，返回剩余的输出字符
+     *
+     * @return
+     */
+    public String doFinalText() {
+        try {
+            if (this.isEncrypt()) {
+                final String head = toText(this.startEncrypt());
+                return head.concat(this.cipher.doFinal());
+            }
+            if (!this.ivDone) {
+                throw new IllegalArgumentException("密文缺少初始化向量");
+            }
+            return this.cipher.doFinal();
+        } finally {
+            this.ivDone = false;
+            this.ivPos = 0;
+        }
+    }
+
+    /**
+     * 加密方向：本条消息尚未开始时生成随机初始化向量，返回需先于密文写出的字节
+     */
+    private byte[] startEncrypt() {
+        if (this.ivDone) {
+            return new byte[0];
+        }
+        RANDOM.nextBytes(this.iv);
+        this.cipher.init(this.iv);
+        this.ivDone = true;
+        return this.iv.clone();
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail) {
+        if (head.length == 0) {
+            return tail;
+        }
+        final byte[] res = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, res, head.length, tail.length);
+        return res;
+    }
+
+    /**
+     * 字节两两组成字符，奇数个时最后一个字节留待下次
+     */
+    private String toChars(byte[] bytes, int off, int len) {
+        final StringBuilder chars = new StringBuilder(len / Character.BYTES + 1);
+        int i = off;
+        final int end = off + len;
+        if (this.carry >= 0 && i < end) {
+            chars.append((char) ((this.carry << Byte.SIZE) | (bytes[i++] & BYTE_MASK)));
+            this.carry = -1;
+        }
+        for (; i + 1 < end; i += Character.BYTES) {
+            chars.append((char) (((bytes[i] & BYTE_MASK) << Byte.SIZE) | (bytes[i + 1] & BYTE_MASK)));
+        }
+        if (i < end) {
+            this.carry = bytes[i] & BYTE_MASK;
+        }
+        return chars.toString();
+    }
+
+    /**
+     * 明文字符还原为字节，最后一个字符暂扣；结束时据结束符补回最后一个奇数字节
+     */
+    private byte[] plainBytes(String plain, boolean isFinal) {
+        final StringBuilder chars = new StringBuilder(plain.length() + 1);
+        if (this.hasHeld) {
+            chars.append(this.held);
+        }
+        chars.append(plain);
+        if (!isFinal) {
+            this.hasHeld = chars.length() > 0;
+            if (this.hasHeld) {
+                this.held = chars.charAt(chars.length() - 1);
+                chars.setLength(chars.length() - 1);
+            }
+            return toBytes(chars);
+        }
+        if (chars.length() == 0) {
+            throw new IllegalArgumentException("密文缺少结束符");
+        }
+        final char end = chars.charAt(chars.length() - 1);
+        chars.setLength(chars.length() - 1);
+        if (end == END_EVEN) {
+            return toBytes(chars);
+        }
+        if ((end & ~BYTE_MASK) != END_ODD) {
+            throw new IllegalArgumentException("密文结束符非法");
+        }
+        final byte[] bytes = toBytes(chars);
+        final byte[] res = Arrays.copyOf(bytes, bytes.length + 1);
+        res[bytes.length] = (byte) end;
+        return res;
+    }
+
+    /**
+     * 字节（偶数个）按UTF-16BE组成字符
+     */
+    private static String toText(byte[] bytes) {
+        final char[] chars = new char[bytes.length / Character.BYTES];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (((bytes[i * Character.BYTES] & BYTE_MASK) << Byte.SIZE)
+                    | (bytes[i * Character.BYTES + 1] & BYTE_MASK));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 字符按UTF-16BE写成字节
+     *
+     * @param chars
+     * @return
+     */
+    public static byte[] toBytes(CharSequence chars) {
+        final byte[] bytes = new byte[chars.length() * Character.BYTES];
+        for (int i = 0; i < chars.length(); i++) {
+            final char c = chars.charAt(i);
+            bytes[i * Character.BYTES] = (byte) (c >> Byte.SIZE);
+            bytes[i * Character.BYTES + 1] = (byte) c;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,118 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupCipher;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 边读边加密（或解密）的输入流装饰器
+ * 从下层输入流读出的字节经GroupCipher处理后返回，
+ * 内存中只保留一个读缓冲区与不足一个分组的状态，适合任意大小的数据
+ */
+public class CipherInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final CipherCodec codec;
+    private final byte[] inBuffer;
+
+    /**
+     * 已处理待读出的字节
+     */
+    private byte[] outBuffer = new byte[0];
+    private int outPos;
+    private boolean finished;
+
+    public CipherInputStream(InputStream in, GroupCipher<?> cipher) {
+        this(in, cipher, BUFFER_SIZE);
+    }
+
+    public CipherInputStream(InputStream in, GroupCipher<?> cipher, int bufferSize) {
+        super(in);
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize <= 0");
+        }
+        this.codec = new CipherCodec(cipher);
+        this.inBuffer = new byte[bufferSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] one = new byte[1];
+        final int n = this.read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (this.outPos >= this.outBuffer.length) {
+            if (this.finished) {
+                return -1;
+            }
+            this.fill();
+        }
+        final int n = Math.min(len, this.outBuffer.length - this.outPos);
+        System.arraycopy(this.outBuffer, this.outPos, b, off, n);
+        this.outPos += n;
+        return n;
+    }
+
+    private void fill() throws IOException {
+        final int n = this.in.read(this.inBuffer, 0, this.inBuffer.length);
+        try {
+            if (n < 0) {
+                this.finished = true;
+                this.outBuffer = this.codec.doFinal();
+            } else {
+                this.outBuffer = this.codec.update(this.inBuffer, 0, n);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        this.outPos = 0;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final byte[] skipBuffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(0, n))];
+        long remaining = n;
+        while (remaining > 0) {
+            final int read = this.read(skipBuffer, 0, (int) Math.min(skipBuffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() {
+        return this.outBuffer.length - this.outPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
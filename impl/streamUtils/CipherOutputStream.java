@@ -0,0 +1,73 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupCipher;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 边写边加密（或解密）的输出流装饰器
+ * 写入的字节经GroupCipher处理后写到下层输出流，close时写出最后的分组，
+ * 加密时密文以随机初始化向量开头，格式见CipherCodec，
+ * 内存中只保留不足一个分组的状态，适合任意大小的数据
+ */
+public class CipherOutputStream extends FilterOutputStream {
+
+    private final CipherCodec codec;
+    private boolean closed;
+
+    public CipherOutputStream(OutputStream out, GroupCipher<?> cipher) {
+        super(out);
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        this.codec = new CipherCodec(cipher);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.closed) {
+            throw new IOException("stream closed");
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.writeOut(this.codec.update(b, off, len));
+    }
+
+    /**
+     * 只写出已经确定的分组，未满的分组要到close时才能写出
+     */
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.writeOut(this.codec.doFinal());
+            this.out.flush();
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            this.out.close();
+        }
+    }
+
+    private void writeOut(byte[] bytes) throws IOException {
+        if (bytes.length > 0) {
+            this.out.write(bytes);
+        }
+    }
+}
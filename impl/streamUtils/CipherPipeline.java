@@ -0,0 +1,243 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupCipher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 读、加解密、写三段重叠的流水线
+ * CBC/CFB/OFB等链式模式在一条流内只能串行加解密，
+ * 故由专用的读线程与写线程在加解密第N块的同时预读第N+1块、写出第N-1块，
+ * 让磁盘等待隐藏在唯一的计算线程（调用线程）之后
+ * 读写线程为每次调用专门创建，不占用TaskUtil的计算线程池，
+ * 块之间经有界队列传递，读缓冲循环使用，内存占用约为(depth * 2 + 2) * chunkSize
+ */
+public class CipherPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_DEPTH = 2;
+
+    private final int chunkSize;
+    private final int depth;
+
+    /**
+     * 流水线中传递的数据块，length小于0表示结束，error不为null表示读写失败
+     */
+    private static final class Chunk {
+        private static final Chunk END = new Chunk(null, -1, null);
+
+        private final byte[] data;
+        private final int length;
+        private final IOException error;
+
+        private Chunk(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    public CipherPipeline() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param chunkSize 每次读入的字节数
+     * @param depth     读、写队列各自最多缓存的块数
+     */
+    public CipherPipeline(int chunkSize, int depth) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize <= 0");
+        }
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth <= 0");
+        }
+        this.chunkSize = chunkSize;
+        this.depth = depth;
+    }
+
+    /**
+     * 将src经cipher处理后写入dst（覆盖）
+     *
+     * @param src
+     * @param dst
+     * @param cipher
+     * @return 写出的字节数
+     * @throws IOException
+     */
+    public long transform(File src, File dst, GroupCipher<?> cipher) throws IOException {
+        if (src == null) {
+            throw new NullPointerException("src is null");
+        }
+        if (dst == null) {
+            throw new NullPointerException("dst is null");
+        }
+        try (
+                FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            return this.transform(in, out, cipher);
+        }
+    }
+
+    /**
+     * 从in读到结束，经cipher处理后写入out，通道由调用方关闭
+     *
+     * @param in
+     * @param out
+     * @param cipher
+     * @return 写出的字节数
+     * @throws IOException
+     */
+    public long transform(ReadableByteChannel in, WritableByteChannel out, GroupCipher<?> cipher) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        final CipherCodec codec = new CipherCodec(cipher);
+        final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(this.depth + 2);
+        for (int i = 0; i < this.depth + 2; i++) {
+            free.add(new byte[this.chunkSize]);
+        }
+        final BlockingQueue<Chunk> readQueue = new ArrayBlockingQueue<>(this.depth);
+        final BlockingQueue<Chunk> writeQueue = new ArrayBlockingQueue<>(this.depth);
+        final long[] written = new long[1];
+        final IOException[] writeError = new IOException[1];
+
+        final Thread reader = new Thread(() -> this.read(in, free, readQueue), "cipher-pipeline-reader");
+        final Thread writer = new Thread(() -> writeError[0] = this.write(out, writeQueue, written), "cipher-pipeline-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        IOException failure = null;
+        boolean finished = false;
+        try {
+            while (true) {
+                final Chunk chunk = readQueue.take();
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                if (chunk.length < 0) {
+                    put(writeQueue, codec.doFinal());
+                    finished = true;
+                    break;
+                }
+                final byte[] res = codec.update(chunk.data, 0, chunk.length);
+                free.put(chunk.data);
+                put(writeQueue, res);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (IllegalArgumentException e) {
+            failure = new IOException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new InterruptedIOException("流水线被中断");
+        } finally {
+            //未正常结束（含未捕获的运行时异常）时读线程可能阻塞在free.take()上
+            if (!finished) {
+                reader.interrupt();
+            }
+            //写线程出错后仍会取走队列中的块，结束标记总能放入
+            try {
+                writeQueue.put(Chunk.END);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writer.interrupt();
+                if (failure == null) {
+                    failure = new InterruptedIOException("流水线被中断");
+                }
+            }
+        }
+        if (failure == null) {
+            failure = writeError[0];
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return written[0];
+    }
+
+    private static void put(BlockingQueue<Chunk> writeQueue, byte[] bytes) throws InterruptedException {
+        if (bytes.length > 0) {
+            writeQueue.put(new Chunk(bytes, bytes.length, null));
+        }
+    }
+
+    /**
+     * 读线程：每次读满一块（或读到结束）后交给计算线程
+     */
+    private void read(ReadableByteChannel in, BlockingQueue<byte[]> free, BlockingQueue<Chunk> readQueue) {
+        try {
+            while (true) {
+                final byte[] data = free.take();
+                final ByteBuffer buffer = ByteBuffer.wrap(data);
+                boolean end = false;
+                while (buffer.hasRemaining() && !end) {
+                    end = in.read(buffer) < 0;
+                }
+                if (buffer.position() > 0) {
+                    readQueue.put(new Chunk(data, buffer.position(), null));
+                }
+                if (end) {
+                    readQueue.put(Chunk.END);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            try {
+                readQueue.put(new Chunk(null, 0, e));
+            } catch (InterruptedException ie) {
+                //计算线程已放弃
+            }
+        } catch (InterruptedException e) {
+            //计算线程已放弃
+        }
+    }
+
+    /**
+     * 写线程：按顺序写出计算线程交来的块，出错后继续取走剩余的块直到结束标记，避免计算线程阻塞
+     *
+     * @return 写出失败时的异常
+     */
+    private IOException write(WritableByteChannel out, BlockingQueue<Chunk> writeQueue, long[] written) {
+        IOException error = null;
+        try {
+            Chunk chunk;
+            while ((chunk = writeQueue.take()).length >= 0) {
+                if (error != null) {
+                    continue;
+                }
+                try {
+                    final ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    written[0] += chunk.length;
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            if (error == null) {
+                error = new InterruptedIOException("写线程被中断");
+            }
+        }
+        return error;
+    }
+}
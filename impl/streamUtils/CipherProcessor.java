@@ -0,0 +1,187 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupCipher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 响应式的加解密处理阶段
+ * 上游发布明文（或密文）片段，下游收到对应的密文（或明文）片段，任意GroupPassword工作模式均可
+ * 经CipherCodec按字符处理：加密时每条消息生成随机初始化向量，作为第一个密文片段的开头交付，
+ * 解密时从密文开头读回，密文因而可由任何同密钥的实例解密，相同明文的两次加密结果不同
+ * 背压：只有下游有需求且已处理的结果都已交付时才向上游请求下一片段，
+ * 故内存中最多只有一个待交付片段与加解密器中不足一个分组的状态
+ * 只支持一个下游订阅者
+ */
+public class CipherProcessor implements Flow.Processor<String, String> {
+
+    private final CipherCodec codec;
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super String> downstream;
+
+    /**
+     * 下游尚未满足的需求量
+     */
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * 待交付给下游的片段
+     */
+    private final Queue<String> ready = new ConcurrentLinkedQueue<>();
+    /**
+     * 是否有向上游请求但尚未到达的片段
+     */
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private boolean terminated;
+
+    public CipherProcessor(GroupCipher<?> cipher) {
+        if (cipher == null) {
+            throw new NullPointerException("cipher is null");
+        }
+        this.codec = new CipherCodec(cipher);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+        if (this.downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("只支持一个订阅者"));
+            return;
+        }
+        this.downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    CipherProcessor.this.fail(new IllegalArgumentException("request n <= 0"));
+                    return;
+                }
+                CipherProcessor.this.demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+                CipherProcessor.this.drain();
+            }
+
+            @Override
+            public void cancel() {
+                CipherProcessor.this.cancelled = true;
+                final Flow.Subscription subscription = CipherProcessor.this.upstream;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+        });
+        this.drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        this.upstream = subscription;
+        this.drain();
+    }
+
+    @Override
+    public void onNext(String item) {
+        try {
+            final String out = this.codec.updateText(item);
+            if (!out.isEmpty()) {
+                this.ready.add(out);
+            }
+        } catch (RuntimeException e) {
+            this.upstream.cancel();
+            this.fail(e);
+            return;
+        }
+        this.requested.set(false);
+        this.drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            final String tail = this.codec.doFinalText();
+            if (!tail.isEmpty()) {
+                this.ready.add(tail);
+            }
+        } catch (RuntimeException e) {
+            this.fail(e);
+            return;
+        }
+        this.upstreamDone = true;
+        this.drain();
+    }
+
+    private void fail(Throwable throwable) {
+        this.error = throwable;
+        this.upstreamDone = true;
+        this.drain();
+    }
+
+    /**
+     * 串行化的交付循环：向下游交付已就绪的片段，
+     * 全部交付且下游仍有需求时才向上游请求下一片段
+     */
+    private void drain() {
+        if (this.wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            final Flow.Subscriber<? super String> subscriber = this.downstream;
+            if (subscriber == null || this.terminated) {
+                continue;
+            }
+            if (this.cancelled) {
+                this.ready.clear();
+                continue;
+            }
+            if (this.error != null) {
+                this.terminated = true;
+                this.ready.clear();
+                subscriber.onError(this.error);
+                continue;
+            }
+            while (this.demand.get() > 0 && !this.ready.isEmpty()) {
+                this.demand.decrementAndGet();
+                subscriber.onNext(this.ready.poll());
+            }
+            if (this.ready.isEmpty() && this.upstreamDone) {
+                this.terminated = true;
+                subscriber.onComplete();
+                continue;
+            }
+            final Flow.Subscription subscription = this.upstream;
+            if (subscription != null && this.demand.get() > 0 && this.ready.isEmpty()
+                    && this.requested.compareAndSet(false, true)) {
+                subscription.request(1);
+            }
+        } while (this.wip.decrementAndGet() != 0);
+    }
+}
@@ -31,6 +31,15 @@ public class StreamRegister<T extends Streamable> {
         this.content = initContent;
     }
 
+    /**
+     * 寄存器当前内容
+     *
+     * @return
+     */
+    public Streamable getContent() {
+        return this.content;
+    }
+
     /**
      * 执行加密
      */
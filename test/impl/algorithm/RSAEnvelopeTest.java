@@ -0,0 +1,69 @@
+package encryption.impl.algorithm;
+
+import encryption.utils.TaskUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * RSAEnvelope在加密实例被回收时的回归测试
+ * 封装、打开300KB的负载（多块，经TaskUtil并行加密），同时另一个线程不断创建并丢弃AdvancedEncrypt与RSA实例并触发GC，
+ * 被回收的实例不得关闭共享线程池，所有往返结果须与原文一致且不抛异常
+ * 运行：java encryption.impl.algorithm.RSAEnvelopeTest
+ */
+public class RSAEnvelopeTest {
+
+    private static final int PAYLOAD_SIZE = 300 * 1024;
+    private static final int ROUNDS = 30;
+
+    public static void main(String[] args) throws InterruptedException {
+        final RSAKey key = RSAKeyPool.of(RSA.DEFAULT_KEY_BITS).take();
+        final RSA recipient = RSA.newInstance(key);
+        final byte[] payload = new byte[PAYLOAD_SIZE];
+        new Random(1).nextBytes(payload);
+
+        final AtomicReference<Throwable> churnFailure = new AtomicReference<>();
+        final Thread churn = new Thread(() -> {
+            try {
+                for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+                    AdvancedEncrypt.newInstance("garbage" + i);
+                    if (i % 64 == 0) {
+                        RSA.newInstance(key);
+                        System.gc();
+                    }
+                }
+            } catch (Throwable e) {
+                churnFailure.set(e);
+            }
+        }, "instance-churn");
+        churn.setDaemon(true);
+        churn.start();
+
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                final byte[] envelope = RSAEnvelope.seal(recipient, payload);
+                if (!Arrays.equals(payload, RSAEnvelope.open(recipient, envelope))) {
+                    throw new AssertionError("第" + i + "轮往返结果与原文不一致");
+                }
+                if (i % 10 == 0) {
+                    //换新会话，使数据密钥对应的AdvancedEncrypt也被丢弃
+                    RSAEnvelope.clearCache();
+                }
+            }
+        } finally {
+            churn.interrupt();
+            churn.join();
+        }
+        if (churnFailure.get() != null) {
+            throw new AssertionError("创建或回收实例失败", churnFailure.get());
+        }
+        //丢弃的实例被回收后，共享线程池应仍在工作
+        System.gc();
+        if (TaskUtil.isTerminated()) {
+            throw new AssertionError("被回收的实例关闭了共享线程池");
+        }
+        System.out.println("OK RSAEnvelopeTest");
+        System.exit(0);
+    }
+}
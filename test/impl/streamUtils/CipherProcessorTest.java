@@ -0,0 +1,74 @@
+package encryption.impl.streamUtils;
+
+import encryption.impl.GroupMode;
+import encryption.impl.algorithm.AdvancedEncrypt;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CipherProcessor的往返测试
+ * 各工作模式下：同一明文经两次加密得到不同密文（每条消息有自己的随机初始化向量），
+ * 且密文可由另一个同密钥的实例解密还原
+ * 运行：java encryption.impl.streamUtils.CipherProcessorTest
+ */
+public class CipherProcessorTest {
+
+    private static final List<String> PLAIN = List.of("响应式", "加解密处理阶段，", "", "片段长度不必是分组的整数倍。");
+
+    public static void main(String[] args) throws Exception {
+        final AdvancedEncrypt sender = AdvancedEncrypt.newInstance("k1k2k3k4");
+        final AdvancedEncrypt receiver = AdvancedEncrypt.newInstance("k1k2k3k4");
+        final String plain = String.join("", PLAIN);
+        for (GroupMode mode : GroupMode.values()) {
+            final String first = run(PLAIN, new CipherProcessor(sender.newEncryptor(mode)));
+            final String second = run(PLAIN, new CipherProcessor(sender.newEncryptor(mode)));
+            if (first.equals(second)) {
+                throw new AssertionError(mode + "：相同明文的两次加密结果相同");
+            }
+            final String back = run(List.of(first), new CipherProcessor(receiver.newDecryptor(mode)));
+            if (!plain.equals(back)) {
+                throw new AssertionError(mode + "：往返结果与原文不一致");
+            }
+        }
+        System.out.println("OK CipherProcessorTest");
+        System.exit(0);
+    }
+
+    /**
+     * 依次发布items，经processor处理后拼接下游收到的全部片段
+     */
+    private static String run(List<String> items, CipherProcessor processor) throws Exception {
+        final StringBuilder res = new StringBuilder();
+        final CompletableFuture<String> done = new CompletableFuture<>();
+        processor.subscribe(new Flow.Subscriber<String>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String item) {
+                res.append(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(res.toString());
+            }
+        });
+        try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            items.forEach(publisher::submit);
+        }
+        return done.get(30, TimeUnit.SECONDS);
+    }
+}
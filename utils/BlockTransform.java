@@ -0,0 +1,16 @@
+package encryption.utils;
+
+/**
+ * 定长分组的原地变换，供FileUtil按映射区域并行处理文件时回调
+ * 实现须可被多个线程同时调用
+ */
+@FunctionalInterface
+public interface BlockTransform {
+
+    /**
+     * @param blockIndex 分组在整个输入中的序号
+     * @param block      分组内容，不足一个分组时其余字节为0，变换结果写回该数组
+     * @param length     有效字节数
+     */
+    void apply(long blockIndex, byte[] block, int length);
+}
@@ -0,0 +1,147 @@
+package encryption.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 串行/并行的自适应调度策略
+ * 由启动时测得的单块加密开销与线程池分发开销决定：
+ * 1.负载较小时串行执行，免去线程切换与invokeAll的等待
+ * 2.负载较大时并行执行，并按单块开销决定每个任务合并多少块（任务粒度）
+ * 单块开销与执行模式无关，随实例缓存；分发开销取当前执行模式下的测量值，切换模式后无需重新校准实例
+ */
+public class DispatchPolicy {
+
+    /**
+     * 计时用的样本块数
+     */
+    private static final int SAMPLE_BLOCKS = 64;
+    private static final int WARM_UP_ROUNDS = 3;
+
+    /**
+     * 每轮计时的时间上限，RSA等单块开销很大的引擎不必凑满样本块数
+     */
+    private static final long SAMPLE_NANOS_BUDGET = 10_000_000L;
+
+    /**
+     * 并行的预期总开销要低于串行开销的 1/PARALLEL_GAIN_RATIO 才值得分发
+     */
+    private static final int PARALLEL_GAIN_RATIO = 2;
+
+    /**
+     * 单个任务的计算量至少是其分发开销的TASK_COST_RATIO倍
+     */
+    private static final int TASK_COST_RATIO = 4;
+
+    /**
+     * 每个线程至少分到的任务数，保证负载均衡
+     */
+    private static final int TASKS_PER_THREAD = 2;
+
+    /**
+     * 一次并行分发的固定开销（纳秒），所有引擎共享；
+     * 不同执行模式的线程池交接开销不同，按ExecutionMode分别测量，各测一次，-1表示尚未测量
+     */
+    private static final AtomicLongArray DISPATCH_NANOS = new AtomicLongArray(ExecutionMode.values().length);
+
+    static {
+        for (int i = 0; i < DISPATCH_NANOS.length(); i++) {
+            DISPATCH_NANOS.set(i, -1L);
+        }
+    }
+
+    /**
+     * 单块加密开销（纳秒）
+     */
+    private final long blockNanos;
+
+    private DispatchPolicy(long blockNanos) {
+        this.blockNanos = Math.max(1L, blockNanos);
+    }
+
+    /**
+     * 启动校准：预热后计时sampleBlock的平均开销
+     *
+     * @param sampleBlock 加密单个样本块的操作
+     * @return
+     */
+    public static DispatchPolicy calibrate(Runnable sampleBlock) {
+        if (sampleBlock == null) {
+            throw new NullPointerException("sampleBlock is null");
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            final long start = System.nanoTime();
+            long elapsed = 0L;
+            int count = 0;
+            while (count < SAMPLE_BLOCKS && elapsed < SAMPLE_NANOS_BUDGET) {
+                sampleBlock.run();
+                count++;
+                elapsed = System.nanoTime() - start;
+            }
+            best = Math.min(best, elapsed / count);
+        }
+        calibrateDispatch();
+        return new DispatchPolicy(best);
+    }
+
+    /**
+     * 当前执行模式下一次空任务分发（每个线程一个空任务）的耗时，
+     * 该模式尚未测量时（含TaskUtil.setExecutionMode切换到新模式后）先测量
+     *
+     * @return
+     */
+    private static long calibrateDispatch() {
+        final int mode = TaskUtil.getExecutionMode().ordinal();
+        final long measured = DISPATCH_NANOS.get(mode);
+        if (measured >= 0) {
+            return measured;
+        }
+        final int taskCount = TaskUtil.getParallelism();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            final long start = System.nanoTime();
+            TaskUtil.invokeBlocks(taskCount, 1, idx -> "");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        DISPATCH_NANOS.set(mode, best);
+        return best;
+    }
+
+    /**
+     * 是否应并行执行
+     *
+     * @param blockCount
+     * @return
+     */
+    public boolean isParallel(int blockCount) {
+        if (blockCount < 2 || TaskUtil.getParallelism() < 2) {
+            return false;
+        }
+        return blockCount * this.blockNanos > PARALLEL_GAIN_RATIO * calibrateDispatch();
+    }
+
+    /**
+     * 并行时每个任务合并的块数
+     *
+     * @param blockCount
+     * @return
+     */
+    public int getBlocksPerTask(int blockCount) {
+        final int parallelism = TaskUtil.getParallelism();
+        final long taskNanos = Math.max(1L, calibrateDispatch() / parallelism);
+        //粒度下限：任务计算量要盖过任务分发开销
+        final long lower = (TASK_COST_RATIO * taskNanos - 1) / this.blockNanos + 1;
+        //粒度上限：保证每个线程都能分到任务
+        final long upper = Math.max(1, blockCount / (parallelism * TASKS_PER_THREAD));
+        return (int) Math.max(1L, Math.min(lower, upper));
+    }
+
+    public long getBlockNanos() {
+        return this.blockNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchPolicy{blockNanos=" + this.blockNanos + ", dispatchNanos=" + DISPATCH_NANOS.get(TaskUtil.getExecutionMode().ordinal()) + "}";
+    }
+}
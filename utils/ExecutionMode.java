@@ -0,0 +1,20 @@
+package encryption.utils;
+
+/**
+ * 多线程任务的执行模式
+ */
+public enum ExecutionMode {
+    /**
+     * 平台线程池（固定线程数）
+     */
+    PLATFORM,
+    /**
+     * 虚拟线程，每个任务一个虚拟线程，
+     * 计算密集的加密任务由载体线程数（即CPU核数）的许可限流
+     */
+    VIRTUAL,
+    /**
+     * 多租户公平调度，按租户权重分享工作线程，小任务走快速通道
+     */
+    FAIR
+}
@@ -0,0 +1,292 @@
+package encryption.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多租户公平调度的工作线程池
+ * 1.每个租户一个任务队列，按权重做差额轮询（deficit round robin），
+ * 大负载的租户只能占用与其权重相称的工作线程份额
+ * 2.小任务（分块数少的一次加密调用）走快速通道，优先于各租户队列被取走，
+ * 为防止快速通道饿死租户队列，连续取快速通道任务不超过FAST_LANE_BURST个
+ * 租户由提交任务的线程决定，见runAs
+ */
+public class FairScheduler extends AbstractExecutorService {
+
+    public static final String DEFAULT_TENANT = "default";
+    public static final int DEFAULT_WEIGHT = 1;
+
+    /**
+     * 任务数不超过该值的一次调用视为小任务
+     */
+    public static final int DEFAULT_FAST_LANE_TASKS = 16;
+    private static final int FAST_LANE_BURST = 8;
+
+    private static final ThreadLocal<String> TENANT = ThreadLocal.withInitial(() -> DEFAULT_TENANT);
+
+    private final Map<String, Integer> weights;
+    private final int fastLaneTasks;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final ArrayDeque<Runnable> fastLane = new ArrayDeque<>();
+    /**
+     * 有待执行任务的租户队列，按轮询顺序排列
+     */
+    private final ArrayDeque<Lane> rotation = new ArrayDeque<>();
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private int fastBurst;
+    private boolean shutdown;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private final CountDownLatch terminated;
+
+    /**
+     * 租户任务队列
+     */
+    private static final class Lane {
+        private final String tenant;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int deficit;
+
+        private Lane(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    public FairScheduler(int threads, Map<String, Integer> weights) {
+        this(threads, weights, DEFAULT_FAST_LANE_TASKS);
+    }
+
+    /**
+     * @param threads       工作线程数
+     * @param weights       租户权重，调度时实时读取，未配置的租户权重为DEFAULT_WEIGHT
+     * @param fastLaneTasks 小任务阈值
+     */
+    public FairScheduler(int threads, Map<String, Integer> weights, int fastLaneTasks) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads <= 0");
+        }
+        if (weights == null) {
+            throw new NullPointerException("weights is null");
+        }
+        this.weights = weights;
+        this.fastLaneTasks = fastLaneTasks;
+        this.terminated = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final Thread worker = new Thread(this::work, "fair-scheduler-" + i);
+            worker.setDaemon(true);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * 以指定租户身份执行action，期间提交的分块任务都记在该租户名下
+     *
+     * @param tenant
+     * @param action
+     * @param <V>
+     * @return
+     * @throws Exception
+     */
+    public static <V> V runAs(String tenant, Callable<V> action) throws Exception {
+        if (tenant == null) {
+            throw new NullPointerException("tenant is null");
+        }
+        final String previous = TENANT.get();
+        TENANT.set(tenant);
+        try {
+            return action.call();
+        } finally {
+            TENANT.set(previous);
+        }
+    }
+
+    public static String currentTenant() {
+        return TENANT.get();
+    }
+
+    /**
+     * 一次调用（taskCount个任务）的提交入口，小任务进快速通道，否则进当前租户队列
+     *
+     * @param taskCount
+     * @return
+     */
+    public Executor forJob(int taskCount) {
+        if (taskCount <= this.fastLaneTasks) {
+            return task -> this.enqueue(task, null);
+        }
+        final String tenant = currentTenant();
+        return task -> this.enqueue(task, tenant);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.enqueue(command, currentTenant());
+    }
+
+    /**
+     * @param task
+     * @param tenant 为null时进快速通道
+     */
+    private void enqueue(Runnable task, String tenant) {
+        if (task == null) {
+            throw new NullPointerException("task is null");
+        }
+        this.lock.lock();
+        try {
+            if (this.shutdown) {
+                throw new RejectedExecutionException("调度器已关闭");
+            }
+            if (tenant == null) {
+                this.fastLane.add(task);
+            } else {
+                Lane lane = this.lanes.get(tenant);
+                if (lane == null) {
+                    lane = new Lane(tenant);
+                    this.lanes.put(tenant, lane);
+                    this.rotation.add(lane);
+                }
+                lane.tasks.add(task);
+            }
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 取下一个任务，调度器关闭且队列为空时返回null
+     * 等待时被中断（取消任务时迟到的中断）不退出，只有调度器关闭后才退出，工作线程数不会因此减少
+     */
+    private Runnable take() {
+        this.lock.lock();
+        try {
+            while (this.fastLane.isEmpty() && this.rotation.isEmpty()) {
+                if (this.shutdown) {
+                    return null;
+                }
+                try {
+                    this.notEmpty.await();
+                } catch (InterruptedException e) {
+                    //shutdownNow时shutdown已置位，下一轮循环退出
+                }
+            }
+            if (!this.fastLane.isEmpty() && (this.fastBurst < FAST_LANE_BURST || this.rotation.isEmpty())) {
+                this.fastBurst++;
+                return this.fastLane.poll();
+            }
+            this.fastBurst = 0;
+            //差额轮询：队首租户每轮可连续取走与其权重相等的任务数
+            final Lane lane = this.rotation.peek();
+            if (lane.deficit <= 0) {
+                lane.deficit += this.weightOf(lane.tenant);
+            }
+            final Runnable task = lane.tasks.poll();
+            lane.deficit--;
+            if (lane.tasks.isEmpty()) {
+                this.rotation.poll();
+                this.lanes.remove(lane.tenant);
+            } else if (lane.deficit <= 0) {
+                this.rotation.add(this.rotation.poll());
+            }
+            return task;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private int weightOf(String tenant) {
+        final Integer weight = this.weights.get(tenant);
+        return weight == null || weight <= 0 ? DEFAULT_WEIGHT : weight;
+    }
+
+    private void work() {
+        try {
+            Runnable task;
+            while ((task = this.take()) != null) {
+                //清除上一个任务被cancel(true)留下的中断标志，不影响下一个（可能属于其它租户的）任务，
+                //shutdownNow已清空队列，不会再取到任务
+                Thread.interrupted();
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            this.terminated.countDown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.lock.lock();
+        try {
+            this.shutdown = true;
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> pending = new ArrayList<>();
+        this.lock.lock();
+        try {
+            this.shutdown = true;
+            pending.addAll(this.fastLane);
+            this.fastLane.clear();
+            for (Lane lane : this.rotation) {
+                pending.addAll(lane.tasks);
+            }
+            this.rotation.clear();
+            this.lanes.clear();
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        for (Thread worker : this.workers) {
+            worker.interrupt();
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        this.lock.lock();
+        try {
+            return this.shutdown;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.terminated.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "FairScheduler{workers=" + this.workers.size() + ", terminated=" + this.isTerminated() + "}";
+    }
+}
@@ -3,6 +3,16 @@ package encryption.utils;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class FileUtil implements Files {
     private final String fileName;
@@ -12,6 +22,25 @@ public class FileUtil implements Files {
 
     private final static int MAX_FILE_SIZE = Integer.MAX_VALUE;
 
+    /**
+     * 并行处理文件时每个任务映射的区域大小（字节），实际取分组长度的整数倍
+     */
+    public final static int REGION_SIZE = 256 * 1024;
+
+    /**
+     * 按文件分段的锁：同一文件的读写互斥，不同文件（除偶尔落在同一段外）互不等待，
+     * 大量并发的小文件请求不会排成一队；用显式锁代替synchronized，
+     * 虚拟线程在锁上等待时会让出载体线程而不会钉住它
+     */
+    private final static int LOCK_STRIPES = 64;
+    private final static ReentrantLock[] LOCKS = new ReentrantLock[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
     public FileUtil(String fileName) {
         this.fileName = fileName;
         this.bufferSize = BUFFER_SIZE;
@@ -31,9 +60,13 @@ public class FileUtil implements Files {
         if (fileName == null) {
             throw new NullPointerException("fileName is null");
         }
-        synchronized (FileUtil.class) {
-            final File file = new File(fileName);
+        final File file = new File(fileName);
+        final ReentrantLock lock = lockOf(file);
+        lock.lock();
+        try {
             return getReadBuffer(file);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -41,9 +74,34 @@ public class FileUtil implements Files {
         if (file == null) {
             throw new NullPointerException("file is null");
         }
-        synchronized (FileUtil.class) {
+        final ReentrantLock lock = lockOf(file);
+        lock.lock();
+        try {
             return getReadBuffer(file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 异步读，I/O任务交由TaskUtil的执行器（虚拟线程模式下为虚拟线程）
+     *
+     * @param fileName
+     * @return
+     */
+    public static Future<StringBuffer> readAsync(String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName is null");
         }
+        return TaskUtil.submitIO(() -> read(fileName));
+    }
+
+    /**
+     * 文件所在的锁段，按规范化的绝对路径选取，同一文件的不同写法落在同一段
+     */
+    private static ReentrantLock lockOf(File file) {
+        final int hash = file.getAbsoluteFile().toPath().normalize().hashCode();
+        return LOCKS[Math.floorMod(hash, LOCK_STRIPES)];
     }
 
     private static StringBuffer getReadBuffer(File file) {
@@ -55,7 +113,13 @@ public class FileUtil implements Files {
         try (
                 FileInputStream fileInputStream = new FileInputStream(file)
         ) {
-            return new StringBuffer(new String(bytes, 0, fileInputStream.read(bytes)));
+            //单次read可能读不满，循环读到文件末尾
+            int off = 0;
+            int n;
+            while (off < bytes.length && (n = fileInputStream.read(bytes, off, bytes.length - off)) > 0) {
+                off += n;
+            }
+            return new StringBuffer(new String(bytes, 0, off));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -72,10 +136,13 @@ public class FileUtil implements Files {
             throw new NullPointerException("fileName is null");
         }
 
-        synchronized (FileUtil.class) {
-            File file = new File(fileName);
+        final File file = new File(fileName);
+        final ReentrantLock lock = lockOf(file);
+        lock.lock();
+        try {
             return getWriteBuffer(file, stringBuffer);
-
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -84,10 +151,27 @@ public class FileUtil implements Files {
             throw new NullPointerException("file is null");
         }
 
-        synchronized (FileUtil.class) {
+        final ReentrantLock lock = lockOf(file);
+        lock.lock();
+        try {
             return getWriteBuffer(file, stringBuffer);
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * 异步写，I/O任务交由TaskUtil的执行器（虚拟线程模式下为虚拟线程）
+     *
+     * @param fileName
+     * @param stringBuffer
+     * @return
+     */
+    public static Future<Boolean> writeAsync(String fileName, StringBuffer stringBuffer) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName is null");
         }
+        return TaskUtil.submitIO(() -> write(fileName, stringBuffer));
     }
 
     private static boolean getWriteBuffer(File file, StringBuffer stringBuffer) {
@@ -106,6 +190,227 @@ public class FileUtil implements Files {
         return false;
     }
 
+    /**
+     * 二进制读写
+     * 密文字符串含大量NUL与不成对的代理字符，经平台字符集编码后无法还原且体积最多膨胀3倍，
+     * 故每个字符直接按UTF-16BE存为两个字节，读时不经过字符集解码，保证原样往返
+     */
+
+    public StringBuffer readBinary() {
+        return readBinary(new File(this.fileName));
+    }
+
+    public boolean writeBinary(CharSequence text) {
+        return writeBinary(new File(this.fileName), text);
+    }
+
+    public static StringBuffer readBinary(String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName is null");
+        }
+        return readBinary(new File(fileName));
+    }
+
+    /**
+     * 读取writeBinary写出的文件
+     *
+     * @param file
+     * @return 读取失败时返回null
+     */
+    public static StringBuffer readBinary(File file) {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        try (
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+        ) {
+            final long length = channel.size();
+            if (length > MAX_FILE_SIZE) {
+                throw new IllegalArgumentException("file's size too big");
+            }
+            if (length % Character.BYTES != 0) {
+                throw new IllegalArgumentException("file's size is not a multiple of " + Character.BYTES);
+            }
+            final ByteBuffer bytes = ByteBuffer.allocate((int) length);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    throw new IOException("文件被截断");
+                }
+            }
+            bytes.flip();
+            //大端字节序的字符视图，不经过字符集解码
+            final CharBuffer chars = bytes.asCharBuffer();
+            return new StringBuffer(chars.length()).append(chars);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public static boolean writeBinary(String fileName, CharSequence text) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName is null");
+        }
+        return writeBinary(new File(fileName), text);
+    }
+
+    /**
+     * 每个字符按UTF-16BE写成两个字节，覆盖原文件
+     *
+     * @param file
+     * @param text
+     * @return
+     */
+    public static boolean writeBinary(File file, CharSequence text) {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        if (text == null) {
+            throw new NullPointerException("text is null");
+        }
+        if ((long) text.length() * Character.BYTES > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("text is too long");
+        }
+        final ByteBuffer bytes = ByteBuffer.allocate(text.length() * Character.BYTES);
+        bytes.asCharBuffer().append(text);
+        try (
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * 按内存映射并行变换文件的一段字节：输入按blockBytes分组，相邻分组合并为互不重叠的映射区域，
+     * 每个区域一个任务交由TaskUtil.invokeBlocks并发执行，结果直接写入输出通道的映射区域，
+     * 不经过堆上的整文件缓冲，也不受Integer.MAX_VALUE限制
+     * 第b个分组读入min(blockBytes, inLength - b * blockBytes)个字节，写出min(blockBytes, outLength - b * blockBytes)个字节，
+     * 故outLength大于inLength时最后一个分组以0补足，小于时截去末尾
+     * in与out为同一通道且位置相同时原地变换，此时两个长度必须相等
+     * 输出通道须可读写（映射要求），本方法不加全局锁，调用方保证没有其他写者
+     *
+     * @param in
+     * @param inPosition
+     * @param inLength
+     * @param out
+     * @param outPosition
+     * @param outLength
+     * @param blockBytes
+     * @param transform
+     * @throws IOException
+     */
+    public static void transformMapped(FileChannel in, long inPosition, long inLength,
+                                       FileChannel out, long outPosition, long outLength,
+                                       int blockBytes, BlockTransform transform) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        if (transform == null) {
+            throw new NullPointerException("transform is null");
+        }
+        if (blockBytes <= 0 || inPosition < 0 || inLength < 0 || outPosition < 0 || outLength < 0) {
+            throw new IllegalArgumentException("参数不合法");
+        }
+        final boolean inPlace = in == out && inPosition == outPosition;
+        if (in == out && !inPlace) {
+            throw new IllegalArgumentException("同一文件的输入输出区域不能错开");
+        }
+        if (inPlace && inLength != outLength) {
+            throw new IllegalArgumentException("原地变换时输入输出长度必须相等");
+        }
+        final long length = Math.max(inLength, outLength);
+        final long blockCount = (length + blockBytes - 1) / blockBytes;
+        final long regionBlocks = Math.max(1, REGION_SIZE / blockBytes);
+        final long regionCount = (blockCount + regionBlocks - 1) / regionBlocks;
+        if (regionCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("file's size too big");
+        }
+        try {
+            TaskUtil.invokeBlocks((int) regionCount, 1, idx -> {
+                final long first = idx * regionBlocks;
+                final long blocks = Math.min(regionBlocks, blockCount - first);
+                final long start = first * blockBytes;
+                final long inSize = Math.max(0, Math.min(blocks * blockBytes, inLength - start));
+                final long outSize = Math.max(0, Math.min(blocks * blockBytes, outLength - start));
+                try {
+                    final MappedByteBuffer source = in.map(inPlace ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                            inPosition + start, inSize);
+                    //原地变换时读写共用一块映射，各自维护位置
+                    final MappedByteBuffer target = inPlace ? source : out.map(FileChannel.MapMode.READ_WRITE,
+                            outPosition + start, outSize);
+                    final MappedByteBuffer writer = inPlace ? source.duplicate() : target;
+                    final byte[] block = new byte[blockBytes];
+                    for (int b = 0; b < blocks; b++) {
+                        final int inBytes = (int) Math.max(0, Math.min(blockBytes, inSize - (long) b * blockBytes));
+                        final int outBytes = (int) Math.max(0, Math.min(blockBytes, outSize - (long) b * blockBytes));
+                        source.get(block, 0, inBytes);
+                        Arrays.fill(block, inBytes, blockBytes, (byte) 0);
+                        transform.apply(first + b, block, inBytes);
+                        writer.put(block, 0, outBytes);
+                    }
+                    target.force();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return "";
+            });
+        } catch (TaskFailedException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在同一文件内把[from, from + length)移到[to, to + length)，区域可以重叠
+     * 按REGION_SIZE分段复制，后移时从末尾开始、前移时从开头开始，不会覆盖尚未复制的字节
+     *
+     * @param channel 须可读写
+     * @param from
+     * @param length
+     * @param to
+     * @throws IOException
+     */
+    public static void moveRegion(FileChannel channel, long from, long length, long to) throws IOException {
+        if (channel == null) {
+            throw new NullPointerException("channel is null");
+        }
+        if (from < 0 || length < 0 || to < 0) {
+            throw new IllegalArgumentException("参数不合法");
+        }
+        if (from == to || length == 0) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(REGION_SIZE, length));
+        for (long done = 0; done < length; ) {
+            final int n = (int) Math.min(buffer.capacity(), length - done);
+            //后移时从末尾开始
+            final long offset = to > from ? length - done - n : done;
+            buffer.clear().limit(n);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + offset + buffer.position()) < 0) {
+                    throw new IOException("文件被截断");
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, to + offset + buffer.position());
+            }
+            done += n;
+        }
+    }
+
     public static void main(String[] s) {
         FileUtil.write("/home/cyh/www/tesFIle蔡", new StringBuffer("helloworld"));
         final StringBuffer buffer = FileUtil.read("/home/cyh/www/tesFIle蔡");
@@ -0,0 +1,53 @@
+package encryption.utils;
+
+/**
+ * 多线程任务失败：超时、任务异常或被中断
+ * 携带失败时的进度，剩余任务已被取消
+ */
+public class TaskFailedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        /**
+         * 超过截止时间
+         */
+        TIMEOUT,
+        /**
+         * 某个任务抛出异常
+         */
+        FAILED,
+        /**
+         * 等待结果的线程被中断
+         */
+        INTERRUPTED
+    }
+
+    private final Reason reason;
+    private final int completed;
+    private final int total;
+
+    public TaskFailedException(Reason reason, int completed, int total, Throwable cause) {
+        super(reason + "：已完成" + completed + "/" + total + "个任务", cause);
+        this.reason = reason;
+        this.completed = completed;
+        this.total = total;
+    }
+
+    public Reason getReason() {
+        return this.reason;
+    }
+
+    /**
+     * 失败前已完成的任务数
+     *
+     * @return
+     */
+    public int getCompleted() {
+        return this.completed;
+    }
+
+    public int getTotal() {
+        return this.total;
+    }
+}
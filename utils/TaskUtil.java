@@ -1,10 +1,30 @@
 package encryption.utils;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
 
 /**
  * 多线程工具类，任务注入机制
@@ -18,6 +38,31 @@ public class TaskUtil {
     private static final int MAX_THREADS_QUANTITY = 10;
     private static final long MAX_TIME_OUT_SECOND_OF_TERMINATE = 10L;
 
+    /**
+     * 载体线程数，虚拟线程模式下同时进行的加密计算不超过该值
+     */
+    private static final int CARRIER_QUANTITY = Runtime.getRuntime().availableProcessors();
+    private static final Semaphore CPU_PERMITS = new Semaphore(CARRIER_QUANTITY, true);
+
+    private static ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+    /**
+     * 公平调度模式下的租户权重
+     */
+    private static final Map<String, Integer> TENANT_WEIGHTS = new ConcurrentHashMap<>();
+
+    /**
+     * 滑动窗口中每个计算线程的在途任务数
+     */
+    private static final int TASKS_IN_FLIGHT_PER_THREAD = 4;
+
+    /**
+     * 各执行器上正在进行的调用数，持有类锁时访问；
+     * 回收时先摘下当前执行器，新的调用改用新建的执行器，等旧执行器上的调用数归零后再关闭它，
+     * 调用期间不持有类锁，并发的加密请求不会互相排队
+     */
+    private static final Map<ExecutorService, Integer> ACTIVE_CALLS = new IdentityHashMap<>();
+
     private TaskUtil() {
 
     }
@@ -32,51 +77,449 @@ public class TaskUtil {
 
     public synchronized static void initExecutor() {
         if (isTerminated()) {
-            executor = Executors.newFixedThreadPool(MAX_THREADS_QUANTITY);
+            switch (executionMode) {
+                case VIRTUAL:
+                    executor = newVirtualThreadExecutor();
+                    break;
+                case FAIR:
+                    executor = new FairScheduler(CARRIER_QUANTITY, TENANT_WEIGHTS);
+                    break;
+                default:
+                    executor = Executors.newFixedThreadPool(MAX_THREADS_QUANTITY);
+            }
+        }
+    }
+
+    /**
+     * 切换执行模式，旧的执行器会被回收（等待正在进行的调用结束），下次initExecutor时按新模式生成
+     *
+     * @param mode
+     */
+    public synchronized static void setExecutionMode(ExecutionMode mode) {
+        if (mode == null) {
+            throw new NullPointerException("mode is null");
+        }
+        if (mode == executionMode) {
+            return;
+        }
+        executionMode = mode;
+        if (!isTerminated() && !executor.isShutdown()) {
+            recycleExecutor();
+        }
+    }
+
+    public static ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * 设置租户在公平调度模式下的权重，即其可分享的工作线程份额
+     * 租户身份见FairScheduler.runAs
+     *
+     * @param tenant
+     * @param weight
+     */
+    public static void setTenantWeight(String tenant, int weight) {
+        if (tenant == null) {
+            throw new NullPointerException("tenant is null");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight <= 0");
         }
+        TENANT_WEIGHTS.put(tenant, weight);
     }
 
-    public synchronized static void invokeAll(List<Callable<Boolean>> callableList) {
+    public static void invokeAll(List<Callable<Boolean>> callableList) {
         invokeAll(callableList, DEFAULT_TIME_OUT);
     }
 
     /**
      * 多任务
+     * 执行期间不持有类锁，否则并发的加密请求会在此处排队；期间执行器不会被回收
+     * 经完成队列逐个收取结果：超时、任一任务异常或返回false时立即取消其余任务并抛出TaskFailedException，
+     * 不必等待剩余任务跑完
      */
-    public synchronized static void invokeAll(List<Callable<Boolean>> callableList, long timeOutOfSeconds) {
+    public static void invokeAll(List<Callable<Boolean>> callableList, long timeOutOfSeconds) {
+        invokeAll(acquireExecutor(false), callableList, timeOutOfSeconds);
+    }
+
+    private static void invokeAll(ExecutorService current, List<Callable<Boolean>> callableList, long timeOutOfSeconds) {
+        final int taskCount = callableList.size();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeOutOfSeconds);
+        final CompletionService<Boolean> completionService = new ExecutorCompletionService<>(current);
+        final Set<Future<Boolean>> running = new HashSet<>();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        int completed = 0;
         try {
-            checkExecutor();
-            executor.invokeAll(callableList, timeOutOfSeconds, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            e.printStackTrace();
+            for (Callable<Boolean> callable : limitCpu(callableList)) {
+                running.add(completionService.submit(callable));
+            }
+            while (completed < taskCount) {
+                final Future<Boolean> future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    throw new TaskFailedException(TaskFailedException.Reason.TIMEOUT, completed, taskCount, null);
+                }
+                running.remove(future);
+                if (!Boolean.TRUE.equals(future.get())) {
+                    //任务返回false表示未完成
+                    throw new TaskFailedException(TaskFailedException.Reason.FAILED, completed, taskCount, null);
+                }
+                completed++;
+            }
+        } catch (ExecutionException e) {
+            cancel(running, cancelled);
+            throw new TaskFailedException(TaskFailedException.Reason.FAILED, completed, taskCount, e.getCause());
+        } catch (InterruptedException e) {
+            cancel(running, cancelled);
+            Thread.currentThread().interrupt();
+            throw new TaskFailedException(TaskFailedException.Reason.INTERRUPTED, completed, taskCount, e);
+        } catch (RuntimeException e) {
+            cancel(running, cancelled);
+            throw e;
+        } finally {
+            releaseExecutor(current);
         }
     }
 
-    public synchronized static void initAndInvokeAll(List<Callable<Boolean>> callableList) {
+    public static void initAndInvokeAll(List<Callable<Boolean>> callableList) {
         initAndInvokeAll(callableList, DEFAULT_TIME_OUT);
     }
 
-    public synchronized static void initAndInvokeAll(List<Callable<Boolean>> callableList, long timeOutOfSeconds) {
-        initExecutor();
-        invokeAll(callableList, timeOutOfSeconds);
+    public static void initAndInvokeAll(List<Callable<Boolean>> callableList, long timeOutOfSeconds) {
+        invokeAll(acquireExecutor(true), callableList, timeOutOfSeconds);
+    }
+
+    /**
+     * 无截止时间
+     */
+    public static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    /**
+     * 由超时时长换算截止时间（System.nanoTime()刻度）
+     *
+     * @param timeOut
+     * @param unit
+     * @return
+     */
+    public static long deadlineOf(long timeOut, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("unit is null");
+        }
+        if (timeOut < 0) {
+            throw new IllegalArgumentException("timeOut < 0");
+        }
+        return System.nanoTime() + unit.toNanos(timeOut);
+    }
+
+    public static String[] invokeBlocks(int blockCount, int blocksPerTask, IntFunction<String> blockTask) {
+        return invokeBlocks(blockCount, blocksPerTask, NO_DEADLINE, blockTask);
+    }
+
+    /**
+     * 分块任务：第idx块的结果由blockTask.apply(idx)给出，
+     * 每blocksPerTask个相邻块合并为一个回调任务，结果按块序号写入返回的数组
+     * 采用滑动窗口连续提交：任一任务完成即补入下一个任务，
+     * 在途任务数不超过窗口大小，既不必等待整批任务中最慢的那个，也不会一次性构造所有回调任务撑爆内存
+     * 超过截止时间、任务异常或被中断时立即取消所有剩余任务并抛出TaskFailedException，
+     * 不会返回缺块的结果
+     *
+     * @param blockCount
+     * @param blocksPerTask
+     * @param deadline      截止时间（System.nanoTime()刻度），NO_DEADLINE表示不限，
+     *                      但两次任务完成间隔仍不得超过DEFAULT_TIME_OUT
+     * @param blockTask
+     * @return
+     */
+    public static String[] invokeBlocks(int blockCount, int blocksPerTask, long deadline, IntFunction<String> blockTask) {
+        if (blockTask == null) {
+            throw new NullPointerException("blockTask is null");
+        }
+        if (blocksPerTask <= 0) {
+            throw new IllegalArgumentException("blocksPerTask <= 0");
+        }
+        final String[] strings = new String[blockCount];
+        final int taskCount = (blockCount + blocksPerTask - 1) / blocksPerTask;
+        final ExecutorService current = acquireExecutor(true);
+        //公平调度模式下按本次调用的任务数与调用方租户选择队列
+        final Executor lane = current instanceof FairScheduler
+                ? ((FairScheduler) current).forJob(taskCount)
+                : current;
+        final CompletionService<Boolean> completionService = new ExecutorCompletionService<>(lane);
+        final int window = getWindowSize();
+        //在途任务，失败时据此取消
+        final Set<Future<Boolean>> running = new HashSet<>();
+        //取消标志，已开始的任务在块与块之间检查它，尽快释放工作线程
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        int submitted = 0;
+        int completed = 0;
+        try {
+            while (completed < taskCount) {
+                //补满窗口
+                while (submitted < taskCount && submitted - completed < window) {
+                    final int sp = submitted * blocksPerTask;
+                    final int ep = Math.min(sp + blocksPerTask, blockCount);
+                    running.add(completionService.submit(limitCpu(() -> {
+                        for (int idx = sp; idx < ep; idx++) {
+                            //不能只返回false：未计算的块会以null留在结果中
+                            if (cancelled.get()) {
+                                throw new CancellationException("分块任务已取消");
+                            }
+                            if (Thread.interrupted()) {
+                                throw new InterruptedException("分块任务被中断");
+                            }
+                            strings[idx] = blockTask.apply(idx);
+                        }
+                        return true;
+                    })));
+                    submitted++;
+                }
+                //等待任一任务完成
+                long waitNanos = TimeUnit.SECONDS.toNanos(DEFAULT_TIME_OUT);
+                if (deadline != NO_DEADLINE) {
+                    waitNanos = Math.min(waitNanos, deadline - System.nanoTime());
+                }
+                final Future<Boolean> future = waitNanos > 0
+                        ? completionService.poll(waitNanos, TimeUnit.NANOSECONDS)
+                        : completionService.poll();
+                if (future == null) {
+                    throw new TaskFailedException(TaskFailedException.Reason.TIMEOUT, completed, taskCount, null);
+                }
+                running.remove(future);
+                future.get();
+                completed++;
+            }
+        } catch (ExecutionException e) {
+            cancel(running, cancelled);
+            throw new TaskFailedException(TaskFailedException.Reason.FAILED, completed, taskCount, e.getCause());
+        } catch (InterruptedException e) {
+            cancel(running, cancelled);
+            Thread.currentThread().interrupt();
+            throw new TaskFailedException(TaskFailedException.Reason.INTERRUPTED, completed, taskCount, e);
+        } catch (TaskFailedException e) {
+            cancel(running, cancelled);
+            throw e;
+        } finally {
+            releaseExecutor(current);
+        }
+        return strings;
+    }
+
+    /**
+     * 分块任务的异步版本：任务提交到调用方提供的执行器，不阻塞调用线程
+     * 任一任务失败或返回的future被取消时，尚未开始的块不再计算
+     *
+     * @param blockCount
+     * @param blocksPerTask
+     * @param executor
+     * @param blockTask
+     * @return 所有块完成后以按块序号排列的结果完成
+     */
+    public static CompletableFuture<String[]> invokeBlocksAsync(int blockCount, int blocksPerTask, Executor executor,
+                                                                IntFunction<String> blockTask) {
+        if (blocksPerTask <= 0) {
+            throw new IllegalArgumentException("blocksPerTask <= 0");
+        }
+        return invokeBlocksAsync(blockCount, count -> blocksPerTask, executor, blockTask, strings -> strings);
+    }
+
+    /**
+     * 分块任务的异步版本，任务粒度与结果合并也在执行器上完成：
+     * 粒度可能需要先校准调度策略，合并结果也可能较慢，都不应占用调用线程
+     * 返回的future就是结果本身，取消它即可使尚未开始的块不再计算
+     *
+     * @param blockCount
+     * @param blocksPerTask 由块数给出每个任务合并的块数，在执行器上调用
+     * @param executor
+     * @param blockTask
+     * @param finisher      由按块序号排列的结果得到最终结果
+     * @param <R>
+     * @return
+     */
+    public static <R> CompletableFuture<R> invokeBlocksAsync(int blockCount, IntUnaryOperator blocksPerTask, Executor executor,
+                                                             IntFunction<String> blockTask, Function<String[], R> finisher) {
+        if (blocksPerTask == null) {
+            throw new NullPointerException("blocksPerTask is null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor is null");
+        }
+        if (blockTask == null) {
+            throw new NullPointerException("blockTask is null");
+        }
+        if (finisher == null) {
+            throw new NullPointerException("finisher is null");
+        }
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        result.whenComplete((v, e) -> {
+            if (e != null) {
+                cancelled.set(true);
+            }
+        });
+        final Runnable dispatch = () -> {
+            if (cancelled.get()) {
+                return;
+            }
+            final int perTask = blocksPerTask.applyAsInt(blockCount);
+            if (perTask <= 0) {
+                throw new IllegalArgumentException("blocksPerTask <= 0");
+            }
+            final String[] strings = new String[blockCount];
+            final int taskCount = (blockCount + perTask - 1) / perTask;
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[taskCount];
+            for (int i = 0; i < taskCount; i++) {
+                final int sp = i * perTask;
+                final int ep = Math.min(sp + perTask, blockCount);
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    for (int idx = sp; idx < ep; idx++) {
+                        if (cancelled.get()) {
+                            throw new CancellationException("分块任务已取消");
+                        }
+                        strings[idx] = blockTask.apply(idx);
+                    }
+                }, executor).whenComplete((v, e) -> {
+                    if (e != null) {
+                        cancelled.set(true);
+                    }
+                });
+            }
+            CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                try {
+                    result.complete(finisher.apply(strings));
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        };
+        try {
+            executor.execute(() -> {
+                try {
+                    dispatch.run();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static void cancel(Set<Future<Boolean>> running, AtomicBoolean cancelled) {
+        cancelled.set(true);
+        for (Future<Boolean> future : running) {
+            future.cancel(true);
+        }
+        running.clear();
+    }
+
+    /**
+     * 滑动窗口大小：每个计算线程保有若干在途任务，使任务队列在输入耗尽前始终不空，
+     * 上限仍为TASK_ONCE_SIZE，与分批构造时的内存占用一致
+     *
+     * @return
+     */
+    private static int getWindowSize() {
+        return Math.min(TASK_ONCE_SIZE, getParallelism() * TASKS_IN_FLIGHT_PER_THREAD);
+    }
+
+    /**
+     * 真正可同时进行计算的线程数
+     *
+     * @return
+     */
+    public static int getParallelism() {
+        return executionMode == ExecutionMode.PLATFORM
+                ? Math.min(MAX_THREADS_QUANTITY, CARRIER_QUANTITY)
+                : CARRIER_QUANTITY;
+    }
+
+    /**
+     * 提交I/O任务，I/O任务不占用计算许可，
+     * 虚拟线程模式下阻塞的I/O只会让出载体线程而不会占满线程池
+     *
+     * @param task
+     * @param <V>
+     * @return
+     */
+    public static <V> Future<V> submitIO(Callable<V> task) {
+        if (task == null) {
+            throw new NullPointerException("task is null");
+        }
+        final ExecutorService current = acquireExecutor(true);
+        //在done中归还：任务在开始前被取消时不会执行，只有done对完成、异常与取消都会调用
+        final FutureTask<V> future = new FutureTask<V>(task) {
+            @Override
+            protected void done() {
+                releaseExecutor(current);
+            }
+        };
+        try {
+            current.execute(future);
+        } catch (RuntimeException e) {
+            releaseExecutor(current);
+            throw e;
+        }
+        return future;
     }
 
+    /**
+     * 摘下当前执行器，等其上正在进行的调用结束后关闭，此后的调用由initExecutor新建执行器
+     * 不可在分块任务中调用
+     */
     public synchronized static void recycleExecutor() {
         checkExecutor();
-        executor.shutdown();
+        final ExecutorService retired = executor;
+        executor = null;
+        while (ACTIVE_CALLS.containsKey(retired)) {
+            try {
+                TaskUtil.class.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                retired.shutdown();
+                throw new IllegalStateException("等待执行器空闲时被中断", e);
+            }
+        }
+        retired.shutdown();
         try {
             //调用shutdown后不是马上关闭的，还要等待线程池所有线程终止
-            executor.awaitTermination(MAX_TIME_OUT_SECOND_OF_TERMINATE, TimeUnit.SECONDS);
+            retired.awaitTermination(MAX_TIME_OUT_SECOND_OF_TERMINATE, TimeUnit.SECONDS);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        System.out.println("线程池已终止：" + executor);
+        System.out.println("线程池已终止：" + retired);
     }
 
     public static boolean isTerminated() {
         return executor == null || executor.isTerminated();
     }
 
+    /**
+     * 登记一次对执行器的使用，登记后执行器不会被回收，须与releaseExecutor成对调用
+     *
+     * @param init 执行器未初始化或已回收时是否新建
+     * @return
+     */
+    private synchronized static ExecutorService acquireExecutor(boolean init) {
+        if (init) {
+            initExecutor();
+        }
+        checkExecutor();
+        ACTIVE_CALLS.merge(executor, 1, Integer::sum);
+        return executor;
+    }
+
+    private synchronized static void releaseExecutor(ExecutorService used) {
+        if (ACTIVE_CALLS.merge(used, -1, Integer::sum) == 0) {
+            ACTIVE_CALLS.remove(used);
+            TaskUtil.class.notifyAll();
+        }
+    }
+
     private static void checkExecutor() {
         if (executor == null) {
             throw new NullPointerException("executor is null !");
@@ -85,4 +528,46 @@ public class TaskUtil {
             throw new IllegalArgumentException("线程池非法状态：" + executor);
         }
     }
+
+    /**
+     * 虚拟线程模式下，计算任务需先取得载体许可，
+     * 保证加密计算的并发度不超过CPU核数，多余的任务挂起在许可上而不占用载体线程
+     */
+    private static List<Callable<Boolean>> limitCpu(List<Callable<Boolean>> callableList) {
+        if (executionMode != ExecutionMode.VIRTUAL) {
+            return callableList;
+        }
+        final List<Callable<Boolean>> limited = new ArrayList<>(callableList.size());
+        for (Callable<Boolean> callable : callableList) {
+            limited.add(limitCpu(callable));
+        }
+        return limited;
+    }
+
+    private static Callable<Boolean> limitCpu(Callable<Boolean> callable) {
+        if (executionMode != ExecutionMode.VIRTUAL) {
+            return callable;
+        }
+        return () -> {
+            CPU_PERMITS.acquire();
+            try {
+                return callable.call();
+            } finally {
+                CPU_PERMITS.release();
+            }
+        };
+    }
+
+    /**
+     * 虚拟线程自JDK21起可用，为兼容更早的JDK使用反射获取，
+     * 不可用时退化为按载体数固定的平台线程池
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(CARRIER_QUANTITY);
+        }
+    }
 }